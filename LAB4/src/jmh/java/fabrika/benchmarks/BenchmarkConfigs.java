@@ -0,0 +1,17 @@
+package fabrika.benchmarks;
+
+import fabrika.config.FactoryConfig;
+
+import java.util.Properties;
+
+final class BenchmarkConfigs {
+    static final String DEFAULT_CONFIG = "src/main/resources/config.txt";
+
+    private BenchmarkConfigs() { }
+
+    static FactoryConfig load(String path) {
+        Properties copy = new Properties();
+        copy.putAll(FactoryConfig.load(path).getProperties());
+        return new FactoryConfig(copy);
+    }
+}
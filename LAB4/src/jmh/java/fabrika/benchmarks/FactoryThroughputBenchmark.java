@@ -0,0 +1,52 @@
+package fabrika.benchmarks;
+
+import fabrika.CarFactory;
+import fabrika.config.FactoryConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FactoryThroughputBenchmark {
+    @Param({BenchmarkConfigs.DEFAULT_CONFIG})
+    public String configPath;
+
+    /** Overrides every supplier and dealer delay when not negative; 0 measures the raw pipeline. */
+    @Param({"-1"})
+    public int delayOverride;
+
+    private CarFactory factory;
+    private int lastSold;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FactoryConfig config = BenchmarkConfigs.load(configPath);
+        if (delayOverride >= 0) {
+            Properties properties = config.getProperties();
+            for (String key : new String[]{"SupplierBodyDelay", "SupplierMotorDelay", "SupplierAccessoryDelay", "DealerDelay"})
+                properties.setProperty(key, String.valueOf(delayOverride));
+            config = new FactoryConfig(properties);
+        }
+        factory = new CarFactory(config, false);
+        factory.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        factory.stop();
+    }
+
+    @Benchmark
+    public int carsSold() {
+        while (factory.getSoldCars() <= lastSold)
+            LockSupport.parkNanos(10_000);
+        return ++lastSold;
+    }
+}
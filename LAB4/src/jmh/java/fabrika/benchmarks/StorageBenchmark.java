@@ -0,0 +1,91 @@
+package fabrika.benchmarks;
+
+import fabrika.config.FactoryConfig;
+import fabrika.storage.Storage;
+import fabrika.storage.StorageFactory;
+import fabrika.storage.WaitStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int ITEMS = 48_000;
+
+    @Param({"locked", "ring"})
+    public String storageType;
+
+    @Param({"1", "4", "16"})
+    public int producers;
+
+    @Param({"1", "4", "16"})
+    public int consumers;
+
+    @Param({"100"})
+    public int capacity;
+
+    @Param({"1"})
+    public int shards;
+
+    @Param({"block"})
+    public String waitStrategy;
+
+    private Storage<Integer> storage;
+    private ExecutorService executor;
+    private final List<Future<?>> pending = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties properties = BenchmarkConfigs.load(BenchmarkConfigs.DEFAULT_CONFIG).getProperties();
+        properties.setProperty("StorageType", storageType);
+        properties.setProperty("StorageWaitStrategy", waitStrategy);
+        FactoryConfig config = new FactoryConfig(properties);
+        storage = new StorageFactory(config).create(capacity, shards);
+        storage.setWaitStrategy(WaitStrategy.fromConfig(config, "StorageWaitStrategy"));
+        executor = Executors.newFixedThreadPool(producers + consumers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void addItemTake() throws Exception {
+        pending.clear();
+        for (int i = 0; i < producers; i++) {
+            int items = share(ITEMS, producers, i);
+            pending.add(executor.submit(() -> {
+                for (int j = 0; j < items; j++)
+                    storage.addItem(j);
+                return null;
+            }));
+        }
+        for (int i = 0; i < consumers; i++) {
+            int items = share(ITEMS, consumers, i);
+            pending.add(executor.submit(() -> {
+                for (int j = 0; j < items; j++)
+                    storage.take();
+                return null;
+            }));
+        }
+        for (Future<?> future : pending)
+            future.get();
+    }
+
+    private static int share(int total, int parts, int index) {
+        return total / parts + (index < total % parts ? 1 : 0);
+    }
+}
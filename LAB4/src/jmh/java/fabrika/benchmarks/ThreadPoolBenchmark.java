@@ -0,0 +1,45 @@
+package fabrika.benchmarks;
+
+import fabrika.workers.ThreadPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadPoolBenchmark {
+    @Param({"1", "4", "16"})
+    public int workers;
+
+    private ThreadPool threadPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        threadPool = new ThreadPool(workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        threadPool.shutdown();
+    }
+
+    @Benchmark
+    public void submitTaskLatency() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        threadPool.submitTask(started::countDown);
+        started.await();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void submitTaskContended() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        threadPool.submitTask(started::countDown);
+        started.await();
+    }
+}
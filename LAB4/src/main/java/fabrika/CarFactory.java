@@ -0,0 +1,333 @@
+package fabrika;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarRecycler;
+import fabrika.car.CarVariant;
+import fabrika.checkpoint.FactoryCheckpoint;
+import fabrika.config.ConfigWatcher;
+import fabrika.config.FactoryConfig;
+import fabrika.controller.Controller;
+import fabrika.dealer.Dealer;
+import fabrika.dealer.OrderBook;
+import fabrika.dealer.OrderDispatcher;
+import fabrika.dealer.SaleLog;
+import fabrika.exeptions.FactoryException;
+import fabrika.journal.FactoryJournal;
+import fabrika.journal.JournalReplay;
+import fabrika.metrics.FactoryMetrics;
+import fabrika.metrics.LeadTimeMetrics;
+import fabrika.storage.Storage;
+import fabrika.storage.StorageFactory;
+import fabrika.storage.StorageGate;
+import fabrika.storage.WaitStrategy;
+import fabrika.supplier.Supplier;
+import fabrika.supplier.SupplyController;
+import fabrika.supplier.SupplyPolicy;
+import fabrika.workers.ThreadMode;
+import fabrika.workers.ThreadPool;
+import fabrika.workers.TimingWheel;
+import fabrika.workers.VariantScheduler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+public class CarFactory {
+    private static final int DEFAULT_JOURNAL_CHECKPOINT_INTERVAL = 30_000;
+
+    private final ThreadFactory threadFactory;
+    private final Storage<BodyPart> bodyStorage;
+    private final Storage<Engine> motorStorage;
+    private final Storage<Accessory> accessoryStorage;
+    private final Storage<CarModel> carStorage;
+    private final Supplier<BodyPart> bodySupplier;
+    private final Supplier<Engine> motorSupplier;
+    private final Supplier<Accessory> accessorySupplier;
+    private final ThreadPool threadPool;
+    private final Controller controller;
+    private final List<Dealer> dealers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final SaleLog saleLog;
+    private final OrderBook orderBook;
+    private final VariantScheduler variantScheduler;
+    private final LeadTimeMetrics leadTimes;
+    private final TimingWheel timingWheel;
+    private final SupplyController supplyController;
+    private final boolean metricsEnabled;
+    private FactoryMetrics metrics;
+    private final FactoryCheckpoint checkpoint;
+    private final int checkpointInterval;
+    private final boolean checkpointRestore;
+    private final FactoryJournal journal;
+    private final int supplierBodyCount;
+    private final int supplierMotorCount;
+    private final int supplierAccessoryCount;
+    private final List<Thread> bodySupplierThreads = new ArrayList<>();
+    private final List<Thread> motorSupplierThreads = new ArrayList<>();
+    private final List<Thread> accessorySupplierThreads = new ArrayList<>();
+    private final StorageGate storageGate = new StorageGate();
+    private volatile boolean started;
+
+    public CarFactory(FactoryConfig config, boolean logEnabled) {
+        threadFactory = ThreadMode.fromConfig(config).threadFactory();
+
+        StorageFactory storageFactory = new StorageFactory(config);
+        bodyStorage = storageFactory.create(config.getBodyStorageCapacity(), config.getSupplierBodyCount());
+        motorStorage = storageFactory.create(config.getMotorStorageCapacity(), config.getSupplierMotorCount());
+        accessoryStorage = storageFactory.create(config.getAccessoryStorageCapacity(), config.getSupplierAccessoryCount());
+        carStorage = storageFactory.create(config.getCarStorageCapacity(), config.getInt("CarStorageShards", 1));
+        bodyStorage.setWaitStrategy(WaitStrategy.fromConfig(config, "BodyStorageWait"));
+        motorStorage.setWaitStrategy(WaitStrategy.fromConfig(config, "MotorStorageWait"));
+        accessoryStorage.setWaitStrategy(WaitStrategy.fromConfig(config, "AccessoryStorageWait"));
+        carStorage.setWaitStrategy(WaitStrategy.fromConfig(config, "CarStorageWait"));
+        // One gate for all four storages, so a checkpoint sees a part either in its storage or in a car, never both.
+        bodyStorage.setGate(storageGate);
+        motorStorage.setGate(storageGate);
+        accessoryStorage.setGate(storageGate);
+        carStorage.setGate(storageGate);
+        supplierBodyCount = config.getSupplierBodyCount();
+        supplierMotorCount = config.getSupplierMotorCount();
+        supplierAccessoryCount = config.getSupplierAccessoryCount();
+
+        bodySupplier = new Supplier<>(bodyStorage, BodyPart::new, config.getSupplierBodyDelay());
+        motorSupplier = new Supplier<>(motorStorage, Engine::new, config.getSupplierMotorDelay());
+        accessorySupplier = new Supplier<>(accessoryStorage, Accessory::new, config.getSupplierAccessoryDelay());
+
+        threadPool = new ThreadPool(config.getWorkers(), threadFactory);
+        controller = new Controller(carStorage, bodyStorage, motorStorage, accessoryStorage, threadPool, config);
+
+        List<CarVariant> variants = CarVariant.fromConfig(config);
+        CarVariant.checkCapacities(variants, config.getBodyStorageCapacity(), config.getMotorStorageCapacity(),
+                config.getAccessoryStorageCapacity());
+        variantScheduler = variants.isEmpty() ? null : new VariantScheduler(variants, bodyStorage, motorStorage,
+                accessoryStorage, config.getInt("VariantMaxLead", VariantScheduler.DEFAULT_MAX_LEAD));
+        controller.setScheduler(variantScheduler);
+
+        saleLog = logEnabled
+                ? new SaleLog(config.getString("SaleLogFile", SaleLog.DEFAULT_FILE),
+                        config.getInt("SaleLogMaxBytes", (int) SaleLog.DEFAULT_MAX_BYTES),
+                        config.getInt("SaleLogFiles", SaleLog.DEFAULT_MAX_FILES))
+                : null;
+        for (int i = 0; i < config.getDealers(); i++)
+            dealers.add(new Dealer(carStorage, i + 1, config.getDealerDelay(), saleLog, controller));
+
+        orderBook = config.getBoolean("OrderMode", false)
+                ? new OrderBook(config.getInt("OrderPriorities", OrderBook.DEFAULT_PRIORITIES),
+                        config.getInt("OrderDeadline", OrderBook.DEFAULT_DEADLINE))
+                : null;
+        if (orderBook != null) {
+            controller.setOrderBook(orderBook, config.getInt("OrderSafetyStock", 0));
+            for (Dealer dealer : dealers)
+                dealer.setOrderBook(orderBook);
+        }
+
+        leadTimes = config.getBoolean("LeadTimeTracing", true) ? new LeadTimeMetrics() : null;
+        controller.setLeadTimes(leadTimes);
+        for (Dealer dealer : dealers)
+            dealer.setLeadTimes(leadTimes);
+
+        int poolSize = config.getInt("PartPoolSize", 0);
+        if (poolSize > 0)
+            enableRecycling(poolSize);
+
+        metricsEnabled = config.getBoolean("MetricsEnabled", false);
+
+        SupplyPolicy supplyPolicy = SupplyPolicy.fromConfig(config);
+        supplyController = supplyPolicy != null
+                ? new SupplyController(supplyPolicy, config.getInt("SupplyControlInterval", SupplyController.DEFAULT_INTERVAL))
+                : null;
+        if (supplyController != null) {
+            supplyController.add(bodySupplier, supplierBodyCount);
+            supplyController.add(motorSupplier, supplierMotorCount);
+            supplyController.add(accessorySupplier, supplierAccessoryCount);
+        }
+
+        // Suppliers and dealers tick on a few shared threads instead of one thread each.
+        timingWheel = config.getBoolean("TimingWheel", false)
+                ? new TimingWheel(config.getInt("TickDuration", TimingWheel.DEFAULT_TICK), TimingWheel.DEFAULT_WHEEL_SIZE,
+                        config.getInt("TickThreads", TimingWheel.DEFAULT_THREADS), threadFactory)
+                : null;
+
+        checkpoint = new FactoryCheckpoint(this, Paths.get(config.getString("CheckpointFile", FactoryCheckpoint.DEFAULT_FILE)));
+        checkpointRestore = config.getBoolean("CheckpointRestore", false);
+        checkpoint.setFullEvery(config.getInt("CheckpointFullEvery", FactoryCheckpoint.DEFAULT_FULL_EVERY));
+
+        // The journal is compacted by checkpoints, so journaling turns periodic checkpoints on by default.
+        journal = config.getBoolean("JournalEnabled", false)
+                ? new FactoryJournal(config.getString("JournalDirectory", FactoryJournal.DEFAULT_DIRECTORY),
+                        config.getInt("JournalSyncInterval", (int) FactoryJournal.DEFAULT_SYNC_INTERVAL))
+                : null;
+        checkpointInterval = config.getInt("CheckpointInterval", journal != null ? DEFAULT_JOURNAL_CHECKPOINT_INTERVAL : 0);
+        if (journal != null)
+            enableJournal();
+    }
+
+    private void enableJournal() {
+        bodySupplier.setJournal(journal);
+        motorSupplier.setJournal(journal);
+        accessorySupplier.setJournal(journal);
+        controller.setJournal(journal);
+        for (Dealer dealer : dealers)
+            dealer.setJournal(journal);
+        checkpoint.setJournal(journal);
+    }
+
+    private void enableRecycling(int poolSize) {
+        bodySupplier.enablePool(poolSize);
+        motorSupplier.enablePool(poolSize);
+        accessorySupplier.enablePool(poolSize);
+
+        CarRecycler recycler = new CarRecycler(bodySupplier, motorSupplier, accessorySupplier, poolSize);
+        controller.setRecycler(recycler);
+        for (Dealer dealer : dealers)
+            dealer.setRecycler(recycler);
+    }
+
+    public void start() {
+        if (journal != null) {
+            recover();
+        } else if (checkpointRestore && checkpoint.exists()) {
+            try {
+                long started = System.nanoTime();
+                checkpoint.restore();
+                System.out.println("Checkpoint restored in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                System.err.println("Checkpoint restore failed: " + e.getMessage());
+            }
+        }
+
+        started = true;
+
+        if (metricsEnabled)
+            metrics = FactoryMetrics.install(this);
+
+        if (timingWheel != null) {
+            scheduleActors();
+            timingWheel.start();
+        } else {
+            // Every supplier thread of a part type runs the same Supplier, so delay and counters stay shared.
+            for (int i = 0; i < supplierBodyCount; i++)
+                bodySupplierThreads.add(startThread(threadFactory.newThread(bodySupplier)));
+            for (int i = 0; i < supplierMotorCount; i++)
+                motorSupplierThreads.add(startThread(threadFactory.newThread(motorSupplier)));
+            for (int i = 0; i < supplierAccessoryCount; i++)
+                accessorySupplierThreads.add(startThread(threadFactory.newThread(accessorySupplier)));
+        }
+
+        startThread(new Thread(controller));
+        if (supplyController != null)
+            startThread(new Thread(supplyController, "supply-control"));
+        if (orderBook != null)
+            startThread(new Thread(new OrderDispatcher(carStorage, orderBook), "order-dispatcher"));
+
+        if (timingWheel == null)
+            for (Dealer dealer : dealers)
+                startThread(threadFactory.newThread(dealer));
+
+        if (checkpointInterval > 0)
+            checkpoint.start(checkpointInterval);
+    }
+
+    private void scheduleActors() {
+        for (int i = 0; i < supplierBodyCount; i++)
+            timingWheel.schedule(bodySupplier.ticker(), 0);
+        for (int i = 0; i < supplierMotorCount; i++)
+            timingWheel.schedule(motorSupplier.ticker(), 0);
+        for (int i = 0; i < supplierAccessoryCount; i++)
+            timingWheel.schedule(accessorySupplier.ticker(), 0);
+        for (Dealer dealer : dealers)
+            timingWheel.schedule(dealer.ticker(), 0);
+    }
+
+    /** Applies later edits of the file config was read from to the running factory, until the factory stops. */
+    public ConfigWatcher watchConfig(Path file, FactoryConfig config) {
+        ConfigWatcher watcher = new ConfigWatcher(this, file, config,
+                config.getInt("ConfigWatchSettle", ConfigWatcher.DEFAULT_SETTLE));
+        startThread(new Thread(watcher, "config-watcher"));
+        return watcher;
+    }
+
+    /** Restores the last checkpoint, replays the journal written after it and saves the result as the new baseline. */
+    private void recover() {
+        try {
+            long started = System.nanoTime();
+            long firstSegment = 0;
+            if (checkpoint.exists()) {
+                checkpoint.restore();
+                firstSegment = checkpoint.getJournalSegment();
+            }
+            long events = new JournalReplay(this).replay(journal.getDirectory(), firstSegment);
+            journal.open();
+            checkpoint.save();
+            System.out.println("Recovered " + events + " journal events in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            throw new FactoryException("Error: Recovery failed: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        for (Thread thread : threads)
+            thread.interrupt();
+        if (timingWheel != null)
+            timingWheel.close();
+        threadPool.shutdown();
+        if (checkpointInterval > 0) {
+            checkpoint.close();
+            try {
+                checkpoint.save();
+            } catch (IOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }
+        if (journal != null)
+            journal.close();
+        if (metrics != null)
+            metrics.close();
+        if (saleLog != null)
+            saleLog.close();
+    }
+
+    private Thread startThread(Thread thread) {
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    public Storage<BodyPart> getBodyStorage() {return bodyStorage; }
+    public Storage<Engine> getMotorStorage() {return motorStorage; }
+    public Storage<Accessory> getAccessoryStorage() {return accessoryStorage; }
+    public Storage<CarModel> getCarStorage() {return carStorage; }
+    public Supplier<BodyPart> getBodySupplier() {return bodySupplier; }
+    public Supplier<Engine> getMotorSupplier() {return motorSupplier; }
+    public Supplier<Accessory> getAccessorySupplier() {return accessorySupplier; }
+    public ThreadPool getThreadPool() {return threadPool; }
+    public Controller getController() {return controller; }
+    public FactoryCheckpoint getCheckpoint() {return checkpoint; }
+    public StorageGate getStorageGate() {return storageGate; }
+    public boolean isStarted() {return started; }
+    public FactoryJournal getJournal() {return journal; }
+    public OrderBook getOrderBook() {return orderBook; }
+    public SaleLog getSaleLog() {return saleLog; }
+    public VariantScheduler getVariantScheduler() {return variantScheduler; }
+    /** The configured variants in index order; empty when the factory builds only the standard car. */
+    public List<CarVariant> getVariants() {
+        return variantScheduler == null ? Collections.emptyList() : Arrays.asList(variantScheduler.getVariants());
+    }
+    public LeadTimeMetrics getLeadTimes() {return leadTimes; }
+    public TimingWheel getTimingWheel() {return timingWheel; }
+    public SupplyController getSupplyController() {return supplyController; }
+    public List<Dealer> getDealers() {return dealers; }
+    public List<Thread> getBodySupplierThreads() {return bodySupplierThreads; }
+    public List<Thread> getMotorSupplierThreads() {return motorSupplierThreads; }
+    public List<Thread> getAccessorySupplierThreads() {return accessorySupplierThreads; }
+
+    public int getSoldCars() {return dealers.stream().mapToInt(Dealer::getSoldCarsCount).sum(); }
+}
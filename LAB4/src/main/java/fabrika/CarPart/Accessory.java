@@ -4,4 +4,8 @@ public class Accessory extends CarParts{
     public Accessory() {
         super();
     }
+
+    public Accessory(int id) {
+        super(id);
+    }
 }
@@ -4,4 +4,8 @@ public class BodyPart extends CarParts{
     public BodyPart() {
         super();
     }
+
+    public BodyPart(int id) {
+        super(id);
+    }
 }
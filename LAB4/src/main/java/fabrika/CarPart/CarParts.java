@@ -1,16 +1,49 @@
 package fabrika.CarPart;
 
+import fabrika.ids.IdAllocator;
+
 import java.io.Serializable;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class CarParts  implements Serializable {
-    private static AtomicInteger counter = new AtomicInteger(0);
-    private final int id;
+    // Kinds as stored in checkpoints, the journal and on the wire.
+    public static final int BODY = 0;
+    public static final int MOTOR = 1;
+    public static final int ACCESSORY = 2;
+
+    private int id;
+    // System.nanoTime() when the part was handed to its storage; 0 if unknown, e.g. after a restore.
+    private transient long producedNanos;
 
     public CarParts() {
-        this.id = counter.incrementAndGet();
+        this.id = IdAllocator.PARTS.next();
+    }
+
+    /** Recreates a part with a known id, e.g. when restoring a checkpoint. */
+    public CarParts(int id) {
+        this.id = id;
+    }
+
+    /** Upper bound of the ids handed out so far; ids still unused in thread blocks count as handed out. */
+    public static int getLastId() {return IdAllocator.PARTS.getNextFree() - 1; }
+    public static void setLastId(int lastId) {IdAllocator.PARTS.restore(lastId + 1); }
+
+    /** Gives a recycled part a fresh identity before it is supplied again. */
+    public void renew() {
+        this.id = IdAllocator.PARTS.next();
+    }
+
+    public static int kindOf(CarParts part) {
+        return part instanceof BodyPart ? BODY : part instanceof Engine ? MOTOR : ACCESSORY;
     }
 
+    /** Recreates a part of the given kind with a known id. */
+    public static CarParts ofKind(int kind, int id) {
+        return kind == BODY ? new BodyPart(id) : kind == MOTOR ? new Engine(id) : new Accessory(id);
+    }
+
+    public long getProducedNanos() {return producedNanos; }
+    public void setProducedNanos(long producedNanos) {this.producedNanos = producedNanos; }
+
     public int getId(){
         return id;
     }
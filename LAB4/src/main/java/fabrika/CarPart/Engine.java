@@ -2,4 +2,5 @@ package fabrika.CarPart;
 
 public class Engine extends CarParts{
     public Engine() {super();}
+    public Engine(int id) {super(id);}
 }
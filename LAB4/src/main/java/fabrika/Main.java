@@ -1,71 +1,57 @@
 package fabrika;
 
-import fabrika.CarPart.Accessory;
-import fabrika.CarPart.BodyPart;
-import fabrika.CarPart.Engine;
-import fabrika.car.CarModel;
 import fabrika.config.ConfigReader;
-import fabrika.controller.Controller;
-import fabrika.dealer.Dealer;
+import fabrika.config.FactoryConfig;
 import fabrika.factoryGui.FactoryView;
-import fabrika.storage.Storage;
-import fabrika.supplier.Supplier;
-import fabrika.workers.ThreadPool;
 
 import javax.swing.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 
 public class Main {
     public static void main(String[] args) {
-        Properties config = ConfigReader.loadConfig();
-
-        int bodyStorageCapacity = Integer.parseInt(config.getProperty("StorageBodySize"));
-        int motorStorageCapacity = Integer.parseInt(config.getProperty("StorageMotorSize"));
-        int accessoryStorageCapacity = Integer.parseInt(config.getProperty("StorageAccessorySize"));
-        int carStorageCapacity = Integer.parseInt(config.getProperty("StorageAutoSize"));
-        int supplierBodyDelay = Integer.parseInt(config.getProperty("SupplierBodyDelay"));
-        int supplierMotorDelay = Integer.parseInt(config.getProperty("SupplierMotorDelay"));
-        int supplierAccessoryDelay = Integer.parseInt(config.getProperty("SupplierAccessoryDelay"));
-        int dealerDelay = Integer.parseInt(config.getProperty("DealerDelay"));
-        int threadPoolSize = Integer.parseInt(config.getProperty("Workers"));
-        int dealerCount = Integer.parseInt(config.getProperty("Dealers"));
-//FIXME если константные значения много то возвращать распаршенный класс not necessary
-
-        Storage<BodyPart> bodyStorage = new Storage<>(bodyStorageCapacity);
-        Storage<Engine> motorStorage = new Storage<>(motorStorageCapacity);
-        Storage<Accessory> accessoryStorage = new Storage<>(accessoryStorageCapacity);
-        Storage<CarModel> carStorage = new Storage<>(carStorageCapacity);
-
-        Supplier<BodyPart> bodySupplier = new Supplier<>(bodyStorage, BodyPart.class, supplierBodyDelay);
-        Supplier<Engine> motorSupplier = new Supplier<>(motorStorage, Engine.class, supplierMotorDelay);
-        Supplier<Accessory> accessorySupplier = new Supplier<>(accessoryStorage, Accessory.class, supplierAccessoryDelay);
-
-        Thread bodySupplierThread = new Thread(bodySupplier);
-        Thread motorSupplierThread = new Thread(motorSupplier);
-        Thread accessorySupplierThread = new Thread(accessorySupplier);
-
-        bodySupplierThread.start();
-        motorSupplierThread.start();
-        accessorySupplierThread.start();
-
-        ThreadPool threadPool = new ThreadPool(threadPoolSize);
-
-        Controller factoryController = new Controller(carStorage, bodyStorage, motorStorage, accessoryStorage, threadPool);
-        Thread factoryControllerThread = new Thread(factoryController);
-        factoryControllerThread.start();
-
-        List<Dealer> dealers = new ArrayList<>();
-        for (int i = 0; i < dealerCount; i++)
-            dealers.add(new Dealer(carStorage, i + 1, dealerDelay, true, factoryController));
-
-        for (Dealer dealer : dealers) {
-            Thread dealerThread = new Thread(dealer);
-            dealerThread.start();
-        }
-
-        SwingUtilities.invokeLater(() -> new FactoryView(bodyStorage, motorStorage, accessoryStorage, carStorage, bodySupplier, motorSupplier, accessorySupplier, dealers, threadPool, factoryController, bodySupplierThread, motorSupplierThread, accessorySupplierThread).setVisible(true));
+        FactoryConfig config = FactoryConfig.load();
+
+        CarFactory factory = new CarFactory(config, true);
+        factory.start();
+        if (config.getBoolean("ConfigWatch", false))
+            factory.watchConfig(Paths.get(ConfigReader.CONFIG_FILE_PATH), config);
+
+        SwingUtilities.invokeLater(() -> {
+            FactoryView view = new FactoryView(factory.getBodyStorage(), factory.getMotorStorage(), factory.getAccessoryStorage(),
+                    factory.getCarStorage(), factory.getBodySupplier(), factory.getMotorSupplier(), factory.getAccessorySupplier(),
+                    factory.getDealers(), factory.getThreadPool(), factory.getController(),
+                    factory.getBodySupplierThreads(), factory.getMotorSupplierThreads(), factory.getAccessorySupplierThreads());
+            view.setCheckpoint(factory.getCheckpoint());
+            view.setLeadTimes(factory.getLeadTimes());
+            view.setVisible(true);
+        });
+
+        startConsole(factory);
+    }
 
+    /** Reads commands from standard input; "dump" prints the lead-time percentiles. */
+    private static void startConsole(CarFactory factory) {
+        Thread console = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    if (!line.trim().equals("dump")) {
+                        System.out.println("Unknown command: " + line.trim() + " (try: dump)");
+                    } else if (factory.getLeadTimes() == null) {
+                        System.out.println("Lead-time tracing is off");
+                    } else {
+                        System.out.print(factory.getLeadTimes().dump());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Console failed: " + e.getMessage());
+            }
+        }, "factory-console");
+        console.setDaemon(true);
+        console.start();
     }
 }
@@ -1,21 +1,68 @@
 package fabrika.car;
 import fabrika.CarPart.*;
+import fabrika.ids.IdAllocator;
 
 import java.io.Serializable;
 
 public class CarModel  implements Serializable {
-    private static int counter = 0;
+    static final CarParts[] NO_PARTS = new CarParts[0];
+
     private int id;
     private Engine engine;
     private BodyPart body;
     private Accessory accessory;
+    private CarVariant variant = CarVariant.STANDARD;
+    // Parts beyond one of each kind, for variants whose bill of materials asks for more.
+    private CarParts[] extraParts = NO_PARTS;
+    // System.nanoTime() of the oldest part and of assembly, for lead-time tracing; 0 if unknown.
+    private transient long firstPartNanos;
+    private transient long assembledNanos;
 
     public CarModel(Engine engine, BodyPart bodyPart, Accessory accessory){
         this.accessory = accessory;
         this.body = bodyPart;
         this.engine = engine;
-        this.id = counter;
-        counter++;
+        this.id = IdAllocator.CARS.next();
+    }
+
+    public CarModel(int id, Engine engine, BodyPart bodyPart, Accessory accessory) {
+        this.accessory = accessory;
+        this.body = bodyPart;
+        this.engine = engine;
+        this.id = id;
+    }
+
+    /** Recreates a variant car with a known id, e.g. when restoring a checkpoint. */
+    public CarModel(int id, CarVariant variant, Engine engine, BodyPart bodyPart, Accessory accessory, CarParts[] extraParts) {
+        this(id, engine, bodyPart, accessory);
+        this.variant = variant;
+        this.extraParts = extraParts;
+    }
+
+    public CarModel(CarVariant variant, Engine engine, BodyPart bodyPart, Accessory accessory, CarParts[] extraParts) {
+        this(engine, bodyPart, accessory);
+        this.variant = variant;
+        this.extraParts = extraParts;
+    }
+
+    public static int getNextId() {return IdAllocator.CARS.getNextFree(); }
+    public static void setNextId(int nextId) {IdAllocator.CARS.restore(nextId); }
+
+    void reassemble(CarVariant variant, Engine engine, BodyPart bodyPart, Accessory accessory, CarParts[] extraParts) {
+        this.accessory = accessory;
+        this.body = bodyPart;
+        this.engine = engine;
+        this.variant = variant;
+        this.extraParts = extraParts;
+        this.id = IdAllocator.CARS.next();
+    }
+
+    void clear() {
+        this.accessory = null;
+        this.body = null;
+        this.engine = null;
+        this.variant = CarVariant.STANDARD;
+        this.extraParts = NO_PARTS;
     }
 
     public Engine getEngine(){
@@ -30,6 +77,27 @@ public class CarModel  implements Serializable {
         return accessory;
     }
 
+    public long getFirstPartNanos() {return firstPartNanos; }
+    public long getAssembledNanos() {return assembledNanos; }
+
+    /** Stamps assembly time and takes the production time of the oldest part as the start of the lead time. */
+    public void stampAssembled(long nowNanos) {
+        long first = earlier(earlier(body.getProducedNanos(), engine.getProducedNanos()), accessory.getProducedNanos());
+        for (CarParts part : extraParts)
+            first = earlier(first, part.getProducedNanos());
+        this.firstPartNanos = first;
+        this.assembledNanos = nowNanos;
+    }
+
+    private static long earlier(long a, long b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        return a - b < 0 ? a : b;
+    }
+
+    public CarVariant getVariant() {return variant; }
+    public CarParts[] getExtraParts() {return extraParts; }
+
     public int getId() {
         return id;
     }
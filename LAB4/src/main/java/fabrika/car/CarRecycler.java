@@ -0,0 +1,48 @@
+package fabrika.car;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.supplier.RecyclingPool;
+import fabrika.supplier.Supplier;
+
+public class CarRecycler {
+    private final Supplier<BodyPart> bodySupplier;
+    private final Supplier<Engine> motorSupplier;
+    private final Supplier<Accessory> accessorySupplier;
+    private final RecyclingPool<CarModel> carPool;
+
+    public CarRecycler(Supplier<BodyPart> bodySupplier, Supplier<Engine> motorSupplier,
+                       Supplier<Accessory> accessorySupplier, int poolSize) {
+        this.bodySupplier = bodySupplier;
+        this.motorSupplier = motorSupplier;
+        this.accessorySupplier = accessorySupplier;
+        this.carPool = new RecyclingPool<>(poolSize);
+    }
+
+    public CarModel assemble(Engine engine, BodyPart body, Accessory accessory) {
+        return assemble(CarVariant.STANDARD, engine, body, accessory, CarModel.NO_PARTS);
+    }
+
+    public CarModel assemble(CarVariant variant, Engine engine, BodyPart body, Accessory accessory, CarParts[] extraParts) {
+        CarModel car = carPool.acquire();
+        if (car == null)
+            return new CarModel(variant, engine, body, accessory, extraParts);
+        car.reassemble(variant, engine, body, accessory, extraParts);
+        return car;
+    }
+
+    public void recycle(CarModel car) {
+        bodySupplier.recycle(car.getBody());
+        motorSupplier.recycle(car.getEngine());
+        accessorySupplier.recycle(car.getAccessory());
+        for (CarParts part : car.getExtraParts()) {
+            if (part instanceof BodyPart) bodySupplier.recycle((BodyPart) part);
+            else if (part instanceof Engine) motorSupplier.recycle((Engine) part);
+            else accessorySupplier.recycle((Accessory) part);
+        }
+        car.clear();
+        carPool.release(car);
+    }
+}
@@ -0,0 +1,109 @@
+package fabrika.car;
+
+import fabrika.CarPart.CarParts;
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A product line: how many parts of each kind one car takes, how long assembly lasts and its share of the workers.
+ * Configured as CarVariants=sedan,truck plus Variant.sedan.Bodies, .Engines, .Accessories, .AssemblyTime (ms) and .Weight.
+ */
+public class CarVariant implements Serializable {
+    public static final CarVariant STANDARD = new CarVariant(0, "standard", 1, 1, 1, 0, 1);
+
+    private final int index;
+    private final String name;
+    private final int bodies;
+    private final int engines;
+    private final int accessories;
+    private final int assemblyTime;
+    private final int weight;
+
+    public CarVariant(int index, String name, int bodies, int engines, int accessories, int assemblyTime, int weight) {
+        if (bodies < 1 || engines < 1 || accessories < 1)
+            throw new FactoryException("Error: Variant " + name + " needs at least one part of every kind");
+        if (assemblyTime < 0 || weight < 1)
+            throw new FactoryException("Error: Variant " + name + " has a negative assembly time or a weight below 1");
+        this.index = index;
+        this.name = name;
+        this.bodies = bodies;
+        this.engines = engines;
+        this.accessories = accessories;
+        this.assemblyTime = assemblyTime;
+        this.weight = weight;
+    }
+
+    /** Returns an empty list when no variants are configured, which keeps the single fixed car shape. */
+    public static List<CarVariant> fromConfig(FactoryConfig config) {
+        List<CarVariant> variants = new ArrayList<>();
+        String names = config.getString("CarVariants", "");
+        if (names.isEmpty()) return variants;
+
+        for (String name : names.split(",")) {
+            name = name.trim();
+            String prefix = "Variant." + name + ".";
+            variants.add(new CarVariant(variants.size(), name,
+                    config.getInt(prefix + "Bodies", 1),
+                    config.getInt(prefix + "Engines", 1),
+                    config.getInt(prefix + "Accessories", 1),
+                    config.getInt(prefix + "AssemblyTime", 0),
+                    config.getInt(prefix + "Weight", 1)));
+        }
+        return variants;
+    }
+
+    /** Index a stored car carries for its variant; STANDARD is -1 so it is told apart from the first configured variant. */
+    public static int storedIndex(CarVariant variant) {return variant == STANDARD ? -1 : variant.index; }
+
+    /**
+     * The variant of a stored car: the configured one with that index, or, if the configuration no longer has it
+     * with the bill the car was built to, a stand-in with that bill.
+     */
+    public static CarVariant restore(List<CarVariant> variants, int storedIndex, CarParts[] extraParts) {
+        int[] bill = {1, 1, 1};
+        for (CarParts part : extraParts)
+            bill[CarParts.kindOf(part)]++;
+        if (storedIndex < 0 && extraParts.length == 0) return STANDARD;
+        if (storedIndex >= 0 && storedIndex < variants.size()) {
+            CarVariant variant = variants.get(storedIndex);
+            if (variant.bodies == bill[CarParts.BODY] && variant.engines == bill[CarParts.MOTOR]
+                    && variant.accessories == bill[CarParts.ACCESSORY])
+                return variant;
+        }
+        return new CarVariant(Math.max(storedIndex, 0), "variant-" + storedIndex, bill[CarParts.BODY],
+                bill[CarParts.MOTOR], bill[CarParts.ACCESSORY], 0, 1);
+    }
+
+    /**
+     * A worker holds the parts of a car while it collects the rest, so a bill larger than a storage could never be filled
+     * and would stall every worker behind it.
+     */
+    public static void checkCapacities(Iterable<CarVariant> variants, int bodyCapacity, int motorCapacity, int accessoryCapacity) {
+        for (CarVariant variant : variants) {
+            checkCapacity(variant, variant.bodies, "bodies", "body", bodyCapacity);
+            checkCapacity(variant, variant.engines, "engines", "motor", motorCapacity);
+            checkCapacity(variant, variant.accessories, "accessories", "accessory", accessoryCapacity);
+        }
+    }
+
+    private static void checkCapacity(CarVariant variant, int needed, String parts, String storage, int capacity) {
+        if (needed > capacity)
+            throw new FactoryException("Error: Variant " + variant.name + " needs " + needed + " " + parts
+                    + " but the " + storage + " storage holds only " + capacity);
+    }
+
+    public int getIndex() {return index; }
+    public String getName() {return name; }
+    public int getBodies() {return bodies; }
+    public int getEngines() {return engines; }
+    public int getAccessories() {return accessories; }
+    public int getAssemblyTime() {return assemblyTime; }
+    public int getWeight() {return weight; }
+
+    @Override
+    public String toString() {return name; }
+}
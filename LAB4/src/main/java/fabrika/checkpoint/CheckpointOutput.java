@@ -0,0 +1,57 @@
+package fabrika.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/** Buffered big-endian output to a FileChannel that keeps a CRC32 of everything written. */
+class CheckpointOutput {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+
+    CheckpointOutput(FileChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        buffer.clear();
+    }
+
+    void putShort(int value) throws IOException {
+        ensure(Short.BYTES);
+        buffer.putShort((short) value);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    /** Writes the checksum of all previous bytes and flushes the rest of the buffer. */
+    void finish() throws IOException {
+        flush();
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
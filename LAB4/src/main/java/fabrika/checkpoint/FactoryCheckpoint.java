@@ -0,0 +1,550 @@
+package fabrika.checkpoint;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.dealer.Dealer;
+import fabrika.exeptions.FactoryException;
+import fabrika.journal.FactoryJournal;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the factory: id counters, supplier and dealer state, worker count and the contents of all storages.
+ * The ids are copied while the storages' gate is frozen, so every item is in the snapshot once at most;
+ * the file is written after production has been let go again. A part a supplier has counted but not stored yet
+ * is kept at the back of its storage, so the supplied counts always match the contents, as after journal replay.
+ *
+ * Layout (big-endian): magic, version, creation time, first journal segment to replay, suppliers, dealers, storages, counters, CRC32 of all previous bytes.
+ * A part is stored as its id; a car as its id, engine, body and accessory ids, its variant index
+ * (-1 for the standard car), the number of extra parts and a kind and id for each.
+ *
+ * Periodic saves are incremental: between full snapshots they append a delta to a log next to the file,
+ * holding the storages as the number of items taken from the front plus the items added at the back.
+ * A storage that did not keep its FIFO order since the last save is written in full.
+ * Delta log layout: magic, version, creation time of its full snapshot, CRC32; then deltas, each ending in its own CRC32.
+ */
+public class FactoryCheckpoint implements AutoCloseable {
+    public static final String DEFAULT_FILE = "checkpoints/factory.ckpt";
+    public static final int DEFAULT_FULL_EVERY = 10;
+    private static final int MAGIC = 0x46434B50;
+    private static final int DELTA_MAGIC = 0x4643444C;
+    private static final int VERSION = 1;
+    private static final int STORAGES = 4;
+    private static final int CARS = 3;
+
+    private final CarFactory factory;
+    private final Path file;
+    private final Path deltaFile;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private Thread scheduler;
+    private volatile long lastSaveMillis;
+    private FactoryJournal journal;
+    private long journalSegment;
+    private int fullEvery = DEFAULT_FULL_EVERY;
+    // What the checkpoint on disk holds; deltas are taken against it. Null until a full snapshot is written or restored.
+    private Image last;
+    private int deltaCount;
+
+    public FactoryCheckpoint(CarFactory factory, Path file) {
+        this.factory = factory;
+        this.file = file;
+        this.deltaFile = file.resolveSibling(file.getFileName() + ".delta");
+    }
+
+    public Path getFile() {return file; }
+    public boolean exists() {return Files.exists(file); }
+    public long getLastSaveMillis() {return lastSaveMillis; }
+    public synchronized void setJournal(FactoryJournal journal) {this.journal = journal; }
+    /** The first journal segment that is not covered by the last restored checkpoint. */
+    public synchronized long getJournalSegment() {return journalSegment; }
+    /** Periodic saves write a full snapshot after this many deltas; 0 makes every save a full one. */
+    public synchronized void setFullEvery(int fullEvery) {this.fullEvery = fullEvery; }
+
+    /** Writes a new full snapshot next to the old one, swaps it in atomically and starts an empty delta log. */
+    public synchronized void save() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null)
+            Files.createDirectories(dir);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        // Everything journaled from the new segment on is replayed over this snapshot.
+        long segment = journal != null ? journal.roll() : 0;
+        Image image = capture(segment);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckpointOutput out = new CheckpointOutput(channel, buffer);
+            out.putInt(MAGIC);
+            out.putShort(VERSION);
+            out.putLong(image.created);
+            out.putLong(segment);
+            writeState(out, image);
+            for (int i = 0; i < STORAGES; i++) {
+                List<int[]> items = image.storages.get(i);
+                out.putInt(image.capacities[i]);
+                out.putInt(items.size());
+                for (int[] item : items)
+                    writeItem(out, item);
+            }
+            writeCounters(out, image);
+            out.finish();
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // A delta log left behind by a crash right here names the old snapshot and is ignored on restore.
+        Files.deleteIfExists(deltaFile);
+        saved(image, segment);
+        deltaCount = 0;
+    }
+
+    /** Appends what changed since the last save to the delta log, or writes a full snapshot when one is due. */
+    public synchronized void saveIncremental() throws IOException {
+        if (last == null || deltaCount >= fullEvery) {
+            save();
+            return;
+        }
+        long segment = journal != null ? journal.roll() : 0;
+        Image image = capture(segment);
+
+        try (FileChannel channel = FileChannel.open(deltaFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                CheckpointOutput header = new CheckpointOutput(channel, buffer);
+                header.putInt(DELTA_MAGIC);
+                header.putShort(VERSION);
+                header.putLong(last.created);
+                header.finish();
+            }
+            CheckpointOutput out = new CheckpointOutput(channel, buffer);
+            writeDelta(out, last, image);
+            out.finish();
+            channel.force(false);
+        } catch (IOException e) {
+            // A torn delta ends the log; start over with a full snapshot rather than append behind it.
+            last = null;
+            throw e;
+        }
+        saved(image, segment);
+        deltaCount++;
+    }
+
+    /** Loads the snapshot and its deltas into the factory; only before the factory starts, as it replaces all state. */
+    public synchronized void restore() throws IOException {
+        if (factory.isStarted())
+            throw new FactoryException("Error: A checkpoint can only be restored before the factory starts; "
+                    + "set CheckpointRestore=true and restart");
+        ByteBuffer in = readFile(file);
+        verify(in, file);
+
+        if (in.getInt() != MAGIC)
+            throw new FactoryException("Error: Not a factory checkpoint: " + file);
+        int version = in.getShort();
+        if (version != VERSION)
+            throw new FactoryException("Error: Unsupported checkpoint version: " + version);
+        Image image = new Image();
+        image.created = in.getLong();
+        image.journalSegment = in.getLong();
+        readState(in, image);
+        for (int i = 0; i < STORAGES; i++) {
+            image.capacities[i] = in.getInt();
+            int size = in.getInt();
+            List<int[]> items = new ArrayList<>(size);
+            for (int j = 0; j < size; j++)
+                items.add(readItem(in, i));
+            image.storages.add(items);
+        }
+        readCounters(in, image);
+
+        int deltas = 0;
+        boolean intact = !Files.exists(deltaFile);
+        if (!intact) {
+            ByteBuffer log = readFile(deltaFile);
+            if (readDeltaHeader(log, image.created)) {
+                Image next;
+                while (log.hasRemaining() && (next = readDelta(log, image)) != null) {
+                    image = next;
+                    deltas++;
+                }
+                intact = !log.hasRemaining();
+            }
+        }
+
+        install(image);
+        journalSegment = image.journalSegment;
+        // Appending behind a torn delta would hide every later one, so the next save is a full one then.
+        last = intact ? image : null;
+        deltaCount = deltas;
+    }
+
+    /** Saves a snapshot every intervalMillis on a background thread until closed. */
+    public synchronized void start(long intervalMillis) {
+        scheduler = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(intervalMillis);
+                    try {
+                        saveIncremental();
+                    } catch (IOException e) {
+                        System.err.println("Checkpoint failed: " + e.getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "factory-checkpoint");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    @Override
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            current = scheduler;
+            scheduler = null;
+        }
+        if (current != null)
+            current.interrupt();
+    }
+
+    private void saved(Image image, long segment) throws IOException {
+        last = image;
+        lastSaveMillis = System.currentTimeMillis();
+        if (journal != null)
+            journal.compact(segment);
+    }
+
+    /** Copies the factory state; the storages are read as ids at one instant, not as objects that may be recycled later. */
+    private Image capture(long segment) {
+        Image image = new Image();
+        image.created = System.currentTimeMillis();
+        image.journalSegment = segment;
+        Supplier<?>[] suppliers = suppliers();
+        Storage<?>[] storages = storages();
+        List<Dealer> dealers = factory.getDealers();
+        image.dealerDelays = new int[dealers.size()];
+        image.soldCounts = new int[dealers.size()];
+
+        List<List<Integer>> inFlight = new ArrayList<>(suppliers.length);
+        factory.getStorageGate().frozen(() -> {
+            for (int i = 0; i < suppliers.length; i++) {
+                image.supplierDelays[i] = suppliers[i].getDelay();
+                inFlight.add(new ArrayList<>());
+                image.suppliedCounts[i] = suppliers[i].getSuppliedCount(inFlight.get(i));
+            }
+            for (int i = 0; i < dealers.size(); i++) {
+                image.dealerDelays[i] = dealers.get(i).getDelay();
+                image.soldCounts[i] = dealers.get(i).getSoldCarsCount();
+            }
+            for (Storage<? extends CarParts> storage : partStorages()) {
+                List<int[]> items = new ArrayList<>(storage.getSize());
+                storage.forEachFrozen(part -> items.add(new int[]{part.getId()}));
+                image.storages.add(items);
+            }
+            List<int[]> cars = new ArrayList<>(factory.getCarStorage().getSize());
+            factory.getCarStorage().forEachFrozen(car -> cars.add(carItem(car)));
+            image.storages.add(cars);
+            // Read while frozen, so the counters are past every id in the snapshot.
+            image.partLastId = CarParts.getLastId();
+            image.carNextId = CarModel.getNextId();
+        });
+        addInFlight(image, inFlight);
+        for (int i = 0; i < STORAGES; i++)
+            image.capacities[i] = storages[i].getCapacity();
+        image.workerCount = factory.getThreadPool().getWorkerCount();
+        return image;
+    }
+
+    /**
+     * Puts the parts still in a supplier's hands at the back of their storage. One the supplier has stored
+     * but not yet marked as such is already in the snapshot, loose or in a car, and is not added twice.
+     */
+    private static void addInFlight(Image image, List<List<Integer>> inFlight) {
+        Set<Integer> present = new HashSet<>();
+        for (int i = 0; i < CARS; i++)
+            for (int[] part : image.storages.get(i))
+                present.add(part[0]);
+        for (int[] car : image.storages.get(CARS)) {
+            present.add(car[1]);
+            present.add(car[2]);
+            present.add(car[3]);
+            for (int i = 7; i < car.length; i += 2)
+                present.add(car[i]);
+        }
+        for (int i = 0; i < inFlight.size(); i++)
+            for (int id : inFlight.get(i))
+                if (present.add(id))
+                    image.storages.get(i).add(new int[]{id});
+    }
+
+    private void install(Image image) {
+        Supplier<?>[] suppliers = suppliers();
+        for (int i = 0; i < suppliers.length; i++) {
+            suppliers[i].setDelay(image.supplierDelays[i]);
+            suppliers[i].setSuppliedCount(image.suppliedCounts[i]);
+        }
+        List<Dealer> dealers = factory.getDealers();
+        for (int i = 0; i < image.dealerDelays.length && i < dealers.size(); i++) {
+            dealers.get(i).setDelay(image.dealerDelays[i]);
+            dealers.get(i).setSoldCarsCount(image.soldCounts[i]);
+        }
+
+        installParts(factory.getBodyStorage(), image, 0, BodyPart::new);
+        installParts(factory.getMotorStorage(), image, 1, Engine::new);
+        installParts(factory.getAccessoryStorage(), image, 2, Accessory::new);
+        Queue<CarModel> cars = new LinkedList<>();
+        List<CarVariant> variants = factory.getVariants();
+        for (int[] car : image.storages.get(CARS))
+            cars.add(car(car, variants));
+        factory.getCarStorage().setCapacity(image.capacities[CARS]);
+        factory.getCarStorage().setItems(cars);
+
+        CarParts.setLastId(image.partLastId);
+        CarModel.setNextId(image.carNextId);
+        factory.getThreadPool().setWorkerCount(image.workerCount);
+    }
+
+    private static <T extends CarParts> void installParts(Storage<T> storage, Image image, int index, IntFunction<T> factory) {
+        Queue<T> items = new LinkedList<>();
+        for (int[] part : image.storages.get(index))
+            items.add(factory.apply(part[0]));
+        storage.setCapacity(image.capacities[index]);
+        storage.setItems(items);
+    }
+
+    private Supplier<?>[] suppliers() {
+        return new Supplier<?>[]{factory.getBodySupplier(), factory.getMotorSupplier(), factory.getAccessorySupplier()};
+    }
+
+    private List<Storage<? extends CarParts>> partStorages() {
+        return Arrays.asList(factory.getBodyStorage(), factory.getMotorStorage(), factory.getAccessoryStorage());
+    }
+
+    private Storage<?>[] storages() {
+        return new Storage<?>[]{factory.getBodyStorage(), factory.getMotorStorage(), factory.getAccessoryStorage(),
+                factory.getCarStorage()};
+    }
+
+    private static void writeState(CheckpointOutput out, Image image) throws IOException {
+        for (int i = 0; i < image.supplierDelays.length; i++) {
+            out.putInt(image.supplierDelays[i]);
+            out.putInt(image.suppliedCounts[i]);
+        }
+        out.putInt(image.dealerDelays.length);
+        for (int i = 0; i < image.dealerDelays.length; i++) {
+            out.putInt(image.dealerDelays[i]);
+            out.putInt(image.soldCounts[i]);
+        }
+    }
+
+    private static void readState(ByteBuffer in, Image image) {
+        for (int i = 0; i < image.supplierDelays.length; i++) {
+            image.supplierDelays[i] = in.getInt();
+            image.suppliedCounts[i] = in.getInt();
+        }
+        int dealerCount = in.getInt();
+        image.dealerDelays = new int[dealerCount];
+        image.soldCounts = new int[dealerCount];
+        for (int i = 0; i < dealerCount; i++) {
+            image.dealerDelays[i] = in.getInt();
+            image.soldCounts[i] = in.getInt();
+        }
+    }
+
+    private static void writeCounters(CheckpointOutput out, Image image) throws IOException {
+        out.putInt(image.partLastId);
+        out.putInt(image.carNextId);
+        out.putInt(image.workerCount);
+    }
+
+    private static void readCounters(ByteBuffer in, Image image) {
+        image.partLastId = in.getInt();
+        image.carNextId = in.getInt();
+        image.workerCount = in.getInt();
+    }
+
+    private static void writeItem(CheckpointOutput out, int[] item) throws IOException {
+        for (int value : item)
+            out.putInt(value);
+    }
+
+    private static int[] readItem(ByteBuffer in, int storage) {
+        if (storage != CARS)
+            return new int[]{in.getInt()};
+
+        int[] head = {in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getInt()};
+        int extras = head[5];
+        if (extras < 0 || extras > in.remaining() / (2 * Integer.BYTES))
+            throw new BufferUnderflowException();
+        int[] item = Arrays.copyOf(head, head.length + 2 * extras);
+        for (int i = head.length; i < item.length; i++)
+            item[i] = in.getInt();
+        return item;
+    }
+
+    private static int[] carItem(CarModel car) {
+        CarParts[] extras = car.getExtraParts();
+        int[] item = new int[6 + 2 * extras.length];
+        item[0] = car.getId();
+        item[1] = car.getEngine().getId();
+        item[2] = car.getBody().getId();
+        item[3] = car.getAccessory().getId();
+        item[4] = CarVariant.storedIndex(car.getVariant());
+        item[5] = extras.length;
+        for (int i = 0; i < extras.length; i++) {
+            item[6 + 2 * i] = CarParts.kindOf(extras[i]);
+            item[7 + 2 * i] = extras[i].getId();
+        }
+        return item;
+    }
+
+    private static CarModel car(int[] item, List<CarVariant> variants) {
+        CarParts[] extras = new CarParts[item[5]];
+        for (int i = 0; i < extras.length; i++)
+            extras[i] = CarParts.ofKind(item[6 + 2 * i], item[7 + 2 * i]);
+        return new CarModel(item[0], CarVariant.restore(variants, item[4], extras),
+                new Engine(item[1]), new BodyPart(item[2]), new Accessory(item[3]), extras);
+    }
+
+    private static void writeDelta(CheckpointOutput out, Image base, Image image) throws IOException {
+        out.putLong(image.created);
+        out.putLong(image.journalSegment);
+        writeState(out, image);
+        for (int i = 0; i < STORAGES; i++) {
+            List<int[]> before = base.storages.get(i);
+            List<int[]> after = image.storages.get(i);
+            int dropped = dropped(before, after);
+            out.putInt(image.capacities[i]);
+            out.putInt(dropped);
+            out.putInt(after.size() - (before.size() - dropped));
+            for (int j = before.size() - dropped; j < after.size(); j++)
+                writeItem(out, after.get(j));
+        }
+        writeCounters(out, image);
+    }
+
+    /** Applies the next delta to base; null if it is torn or corrupted, which ends the log. */
+    private static Image readDelta(ByteBuffer in, Image base) {
+        int start = in.position();
+        Image image = new Image();
+        try {
+            image.created = in.getLong();
+            image.journalSegment = in.getLong();
+            readState(in, image);
+            for (int i = 0; i < STORAGES; i++) {
+                List<int[]> before = base.storages.get(i);
+                image.capacities[i] = in.getInt();
+                int dropped = in.getInt();
+                int added = in.getInt();
+                if (dropped < 0 || dropped > before.size() || added < 0 || added > in.remaining() / Integer.BYTES)
+                    return null;
+                List<int[]> items = new ArrayList<>(before.size() - dropped + added);
+                items.addAll(before.subList(dropped, before.size()));
+                for (int j = 0; j < added; j++)
+                    items.add(readItem(in, i));
+                image.storages.add(items);
+            }
+            readCounters(in, image);
+            if (in.remaining() < Long.BYTES || crc(in, start, in.position()) != in.getLong())
+                return null;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return image;
+    }
+
+    /** False if the delta log is torn or belongs to another snapshot. */
+    private boolean readDeltaHeader(ByteBuffer in, long created) {
+        int headerBytes = Integer.BYTES + Short.BYTES + Long.BYTES;
+        if (in.remaining() < headerBytes + Long.BYTES || crc(in, 0, headerBytes) != in.getLong(headerBytes))
+            return false;
+        if (in.getInt() != DELTA_MAGIC || in.getShort() != VERSION || in.getLong() != created) {
+            System.err.println("Checkpoint delta log " + deltaFile + " does not belong to " + file + "; ignored");
+            return false;
+        }
+        in.getLong();
+        return true;
+    }
+
+    /**
+     * How many of the oldest items of before are gone from after, provided after is the rest of before plus
+     * newer items, the way a FIFO storage changes; otherwise all of before, so after is written in full.
+     */
+    private static int dropped(List<int[]> before, List<int[]> after) {
+        if (after.isEmpty()) return before.size();
+        int first = after.get(0)[0];
+        for (int k = 0; k < before.size(); k++) {
+            if (before.get(k)[0] != first) continue;
+            int kept = before.size() - k;
+            if (kept > after.size()) return before.size();
+            for (int j = 0; j < kept; j++)
+                if (before.get(k + j)[0] != after.get(j)[0]) return before.size();
+            return k;
+        }
+        return before.size();
+    }
+
+    private static ByteBuffer readFile(Path path) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) { }
+        }
+        in.flip();
+        return in;
+    }
+
+    private static long crc(ByteBuffer in, int from, int to) {
+        ByteBuffer bytes = in.duplicate();
+        bytes.limit(to).position(from);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static void verify(ByteBuffer in, Path file) {
+        if (in.remaining() < Long.BYTES)
+            throw new FactoryException("Error: Checkpoint is truncated: " + file);
+        if (crc(in, 0, in.limit() - Long.BYTES) != in.getLong(in.limit() - Long.BYTES))
+            throw new FactoryException("Error: Checkpoint is corrupted: " + file);
+        in.limit(in.limit() - Long.BYTES);
+    }
+
+    /** Everything a checkpoint holds, as plain numbers; a part is {id}, a car laid out as in carItem. */
+    private static final class Image {
+        long created;
+        long journalSegment;
+        final int[] supplierDelays = new int[3];
+        final int[] suppliedCounts = new int[3];
+        int[] dealerDelays;
+        int[] soldCounts;
+        final int[] capacities = new int[STORAGES];
+        // Storage contents, oldest first.
+        final List<List<int[]>> storages = new ArrayList<>(STORAGES);
+        int partLastId;
+        int carNextId;
+        int workerCount;
+    }
+}
@@ -8,7 +8,7 @@ import java.io.IOException;
 import java.util.*;
 
 public class ConfigReader {
-    private static final String CONFIG_FILE_PATH = "src/main/resources/config.txt";
+    public static final String CONFIG_FILE_PATH = "src/main/resources/config.txt";
     private static final Set<String> REQUIRED_KEYS = Set.of(
             "StorageBodySize",
             "StorageMotorSize",
@@ -22,9 +22,11 @@ public class ConfigReader {
             "Dealers"
     );
 
-    public static Properties loadConfig() {
+    public static Properties loadConfig() {return loadConfig(CONFIG_FILE_PATH); }
+
+    public static Properties loadConfig(String path) {
         Properties properties = new Properties();
-        try (FileInputStream fis = new FileInputStream(CONFIG_FILE_PATH)) {
+        try (FileInputStream fis = new FileInputStream(path)) {
             properties.load(fis);
             Set<String> missingKeys = new HashSet<>(REQUIRED_KEYS);
             missingKeys.removeAll(properties.stringPropertyNames());
@@ -0,0 +1,178 @@
+package fabrika.config;
+
+import fabrika.CarFactory;
+import fabrika.car.CarVariant;
+import fabrika.dealer.Dealer;
+import fabrika.exeptions.FactoryException;
+import fabrika.storage.Storage;
+import fabrika.storage.WaitStrategy;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Applies edits of the config file to the running factory: storage capacities and wait strategies,
+ * the worker count and supplier and dealer delays.
+ * A changed file is parsed and validated in full before anything is applied, so a half-saved or invalid file changes nothing.
+ * Only values that differ from the previously applied file are set, so a slider moved in the GUI keeps its value
+ * until its key is edited. Other changed keys need a restart and are only reported.
+ */
+public class ConfigWatcher implements Runnable {
+    // Editors often save in several writes; the file is read once it has been quiet this long.
+    public static final int DEFAULT_SETTLE = 100;
+
+    private static final String[] STORAGE_SIZES = {"StorageBodySize", "StorageMotorSize", "StorageAccessorySize", "StorageAutoSize"};
+    private static final String[] STORAGE_WAITS = {"BodyStorageWait", "MotorStorageWait", "AccessoryStorageWait", "CarStorageWait"};
+    private static final String[] SUPPLIER_DELAYS = {"SupplierBodyDelay", "SupplierMotorDelay", "SupplierAccessoryDelay"};
+    private static final Set<String> RELOADABLE = new HashSet<>();
+
+    static {
+        RELOADABLE.addAll(Arrays.asList(STORAGE_SIZES));
+        RELOADABLE.addAll(Arrays.asList(STORAGE_WAITS));
+        RELOADABLE.addAll(Arrays.asList(SUPPLIER_DELAYS));
+        RELOADABLE.addAll(Arrays.asList("StorageWaitStrategy", "Workers", "DealerDelay"));
+    }
+
+    private final CarFactory factory;
+    private final Path file;
+    private final int settle;
+    private FactoryConfig applied;
+
+    public ConfigWatcher(CarFactory factory, Path file, FactoryConfig applied, int settle) {
+        this.factory = factory;
+        this.file = file.toAbsolutePath();
+        this.applied = applied;
+        this.settle = settle;
+    }
+
+    public synchronized FactoryConfig getApplied() {return applied; }
+
+    @Override
+    public void run() {
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            // Directories are watched, not files; replacing the file by a rename shows up as a create.
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.take();
+                boolean changed = isChanged(key);
+                if (!key.reset()) {
+                    System.err.println("Config watcher stopped: " + file.getParent() + " is gone");
+                    return;
+                }
+                if (!changed) continue;
+
+                do {
+                    Thread.sleep(settle);
+                } while (drain(watcher));
+                reload();
+            }
+        } catch (IOException e) {
+            System.err.println("Config watcher failed: " + e.getMessage());
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the file and applies the values that changed since the last reload.
+     * Returns false and keeps the running values if the file cannot be read or any value is invalid.
+     */
+    public synchronized boolean reload() {
+        FactoryConfig config;
+        List<Runnable> changes = new ArrayList<>();
+        List<String> report = new ArrayList<>();
+        try {
+            config = new FactoryConfig(ConfigReader.loadConfig(file.toString()));
+            planStorages(config, changes, report);
+            CarVariant.checkCapacities(factory.getVariants(), config.getBodyStorageCapacity(),
+                    config.getMotorStorageCapacity(), config.getAccessoryStorageCapacity());
+            planInt(config, "Workers", 1, factory.getThreadPool()::setWorkerCount, changes, report);
+            planInt(config, SUPPLIER_DELAYS[0], 0, factory.getBodySupplier()::setDelay, changes, report);
+            planInt(config, SUPPLIER_DELAYS[1], 0, factory.getMotorSupplier()::setDelay, changes, report);
+            planInt(config, SUPPLIER_DELAYS[2], 0, factory.getAccessorySupplier()::setDelay, changes, report);
+            planInt(config, "DealerDelay", 0, delay -> {
+                for (Dealer dealer : factory.getDealers())
+                    dealer.setDelay(delay);
+            }, changes, report);
+        } catch (FactoryException e) {
+            System.err.println("Config not reloaded: " + e.getMessage());
+            return false;
+        }
+
+        for (Runnable change : changes)
+            change.run();
+        for (String key : restartOnly(config))
+            System.err.println("Config key " + key + " changed; restart to apply it");
+        applied = config;
+        if (!report.isEmpty())
+            System.out.println("Config reloaded: " + String.join(", ", report));
+        return true;
+    }
+
+    private void planStorages(FactoryConfig config, List<Runnable> changes, List<String> report) {
+        Storage<?>[] storages = {factory.getBodyStorage(), factory.getMotorStorage(), factory.getAccessoryStorage(),
+                factory.getCarStorage()};
+        for (int i = 0; i < storages.length; i++) {
+            Storage<?> storage = storages[i];
+            planInt(config, STORAGE_SIZES[i], 1, storage::setCapacity, changes, report);
+
+            WaitStrategy wait = WaitStrategy.fromConfig(config, STORAGE_WAITS[i]);
+            WaitStrategy old = WaitStrategy.fromConfig(applied, STORAGE_WAITS[i]);
+            if (wait != old) {
+                changes.add(() -> storage.setWaitStrategy(wait));
+                report.add(STORAGE_WAITS[i] + " " + old.getConfigName() + " -> " + wait.getConfigName());
+            }
+        }
+    }
+
+    private void planInt(FactoryConfig config, String key, int min, IntConsumer setter, List<Runnable> changes,
+                         List<String> report) {
+        int value = config.getInt(key);
+        if (value < min)
+            throw new FactoryException("Error: Configuration value for " + key + " must be at least " + min + ": " + value);
+        int old = applied.getInt(key);
+        if (value == old) return;
+        changes.add(() -> setter.accept(value));
+        report.add(key + " " + old + " -> " + value);
+    }
+
+    private Set<String> restartOnly(FactoryConfig config) {
+        Set<String> keys = new TreeSet<>(config.getProperties().stringPropertyNames());
+        keys.addAll(applied.getProperties().stringPropertyNames());
+        keys.removeAll(RELOADABLE);
+        keys.removeIf(key -> config.getProperties().getProperty(key, "").trim()
+                .equals(applied.getProperties().getProperty(key, "").trim()));
+        return keys;
+    }
+
+    private boolean isChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents())
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+                changed = true;
+        return changed;
+    }
+
+    /** Consumes pending events; true if the file changed again meanwhile. */
+    private boolean drain(WatchService watcher) {
+        boolean changed = false;
+        WatchKey key;
+        while ((key = watcher.poll()) != null) {
+            changed |= isChanged(key);
+            key.reset();
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,98 @@
+package fabrika.config;
+
+import fabrika.exeptions.FactoryException;
+
+import java.util.Properties;
+
+public class FactoryConfig {
+    private final Properties properties;
+    private final int bodyStorageCapacity;
+    private final int motorStorageCapacity;
+    private final int accessoryStorageCapacity;
+    private final int carStorageCapacity;
+    private final int supplierBodyDelay;
+    private final int supplierMotorDelay;
+    private final int supplierAccessoryDelay;
+    private final int supplierBodyCount;
+    private final int supplierMotorCount;
+    private final int supplierAccessoryCount;
+    private final int dealerDelay;
+    private final int workers;
+    private final int workerBatchSize;
+    private final int dealers;
+
+    public FactoryConfig(Properties properties) {
+        this.properties = properties;
+        this.bodyStorageCapacity = getInt("StorageBodySize");
+        this.motorStorageCapacity = getInt("StorageMotorSize");
+        this.accessoryStorageCapacity = getInt("StorageAccessorySize");
+        this.carStorageCapacity = getInt("StorageAutoSize");
+        this.supplierBodyDelay = getInt("SupplierBodyDelay");
+        this.supplierMotorDelay = getInt("SupplierMotorDelay");
+        this.supplierAccessoryDelay = getInt("SupplierAccessoryDelay");
+        this.supplierBodyCount = getInt("SupplierBodyCount", 1);
+        this.supplierMotorCount = getInt("SupplierMotorCount", 1);
+        this.supplierAccessoryCount = getInt("SupplierAccessoryCount", 1);
+        this.dealerDelay = getInt("DealerDelay");
+        this.workers = getInt("Workers");
+        this.workerBatchSize = getInt("WorkerBatchSize", 1);
+        this.dealers = getInt("Dealers");
+    }
+
+    public static FactoryConfig load() {return new FactoryConfig(ConfigReader.loadConfig()); }
+    public static FactoryConfig load(String path) {return new FactoryConfig(ConfigReader.loadConfig(path)); }
+
+    public Properties getProperties() {return properties; }
+    public int getBodyStorageCapacity() {return bodyStorageCapacity; }
+    public int getMotorStorageCapacity() {return motorStorageCapacity; }
+    public int getAccessoryStorageCapacity() {return accessoryStorageCapacity; }
+    public int getCarStorageCapacity() {return carStorageCapacity; }
+    public int getSupplierBodyDelay() {return supplierBodyDelay; }
+    public int getSupplierMotorDelay() {return supplierMotorDelay; }
+    public int getSupplierAccessoryDelay() {return supplierAccessoryDelay; }
+    public int getSupplierBodyCount() {return supplierBodyCount; }
+    public int getSupplierMotorCount() {return supplierMotorCount; }
+    public int getSupplierAccessoryCount() {return supplierAccessoryCount; }
+    public int getDealerDelay() {return dealerDelay; }
+    public int getWorkers() {return workers; }
+    public int getWorkerBatchSize() {return workerBatchSize; }
+    public int getDealers() {return dealers; }
+
+    public int getInt(String key) {
+        String value = properties.getProperty(key);
+        if (value == null) throw new FactoryException("Error: Configuration value is missing: " + key);
+        return parse(key, value);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : parse(key, value);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new FactoryException("Error: Configuration value for " + key + " is not a number: " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public String getString(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
+
+    private static int parse(String key, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new FactoryException("Error: Configuration value for " + key + " is not a number: " + value);
+        }
+    }
+}
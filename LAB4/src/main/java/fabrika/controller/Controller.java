@@ -1,52 +1,178 @@
 package fabrika.controller;
 
+import fabrika.config.FactoryConfig;
+import fabrika.dealer.OrderBook;
+import fabrika.exeptions.FactoryException;
+import fabrika.journal.FactoryJournal;
+import fabrika.metrics.LeadTimeMetrics;
+import fabrika.workers.VariantScheduler;
 import fabrika.workers.Worker;
 import fabrika.CarPart.*;
 import fabrika.car.CarModel;
+import fabrika.car.CarRecycler;
 import fabrika.storage.Storage;
 import fabrika.workers.ThreadPool;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Controller implements Runnable, Serializable {
+    private static final int DEFAULT_JOB_SIZE = 10;
+    private static final int DEFAULT_INTERVAL = 100;
+    private static final double RATE_SMOOTHING = 0.3;
+
     private final Storage<CarModel> carStorage;
     private final Storage<BodyPart> bodyStorage;
     private final Storage<Engine> motorStorage;
     private final Storage<Accessory> accessoryStorage;
     private final ThreadPool threadPool;
+    private final int workerBatchSize;
+    private final ProductionPolicy policy;
+    private final int targetLevel;
+    private final int maxTasks;
+    private final int jobSize;
+    private final int interval;
+    private transient CarRecycler recycler;
+    private transient FactoryJournal journal;
+    private transient OrderBook orderBook;
+    private transient VariantScheduler scheduler;
+    private transient LeadTimeMetrics leadTimes;
+    private int safetyStock;
+
+    private final LongAdder sales = new LongAdder();
+    private final LongAdder builtCars = new LongAdder();
+    private final AtomicInteger inFlightTasks = new AtomicInteger();
+    // Written under planTasks' lock, read by monitoring without it.
+    private volatile long lastPlanTime = -1;
+    private volatile long lastSold;
+    private volatile double saleRate;
 
     public Controller(Storage<CarModel> carStorage, Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, ThreadPool threadPool) {
+        this(carStorage, bodyStorage, motorStorage, accessoryStorage, threadPool, 1, new ThresholdPolicy(),
+                carStorage.getCapacity() / 2, 0, DEFAULT_JOB_SIZE, DEFAULT_INTERVAL);
+    }
+
+    public Controller(Storage<CarModel> carStorage, Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, ThreadPool threadPool, FactoryConfig config) {
+        this(carStorage, bodyStorage, motorStorage, accessoryStorage, threadPool, config, config.getInt("MaxAssemblyTasks", 0));
+    }
+
+    /** Reads everything but the task limit from config; without a thread pool maxTasks has to be positive. */
+    public Controller(Storage<CarModel> carStorage, Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, ThreadPool threadPool,
+                      FactoryConfig config, int maxTasks) {
+        this(carStorage, bodyStorage, motorStorage, accessoryStorage, threadPool, config.getWorkerBatchSize(),
+                ProductionPolicy.fromConfig(config),
+                config.getInt("ControllerTargetLevel", config.getCarStorageCapacity() / 2),
+                maxTasks,
+                config.getInt("AssemblyJobSize", DEFAULT_JOB_SIZE),
+                config.getInt("ControllerInterval", DEFAULT_INTERVAL));
+    }
+
+    /** A maxTasks of 0 follows the current worker count of the thread pool. */
+    public Controller(Storage<CarModel> carStorage, Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, ThreadPool threadPool,
+                      int workerBatchSize, ProductionPolicy policy, int targetLevel, int maxTasks, int jobSize, int interval) {
+        if (threadPool == null && maxTasks <= 0)
+            throw new FactoryException("Error: A controller without a thread pool needs a positive task limit");
         this.carStorage = carStorage;
         this.bodyStorage = bodyStorage;
         this.motorStorage = motorStorage;
         this.accessoryStorage = accessoryStorage;
         this.threadPool = threadPool;
+        this.workerBatchSize = workerBatchSize;
+        this.policy = policy;
+        this.targetLevel = targetLevel;
+        this.maxTasks = maxTasks;
+        this.jobSize = jobSize;
+        this.interval = interval;
     }
 
     @Override
     public void run() {
-        int target = carStorage.getCapacity()/2;
         try {
-            for (int i = 0; i < carStorage.getCapacity(); i++)
-                threadPool.submitTask(new Worker(bodyStorage, motorStorage, accessoryStorage, carStorage));
-
             while (!Thread.currentThread().isInterrupted()) {
-                synchronized (this) {wait(); }
-                synchronized (carStorage) {
-                    if (carStorage.getSize() <= target)
-                        threadPool.submitTask(new Worker(bodyStorage, motorStorage, accessoryStorage, carStorage));
+                int tasks = planTasks(System.nanoTime());
+                for (int i = 0; i < tasks; i++) {
+                    if (!submitJob()) {
+                        // The pool is shut down; the jobs planned but never accepted are not in flight.
+                        for (int j = i; j < tasks; j++)
+                            taskFinished();
+                        break;
+                    }
                 }
+                Thread.sleep(interval);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
+    /** Decides how many new assembly jobs to start now and counts them as in flight. */
+    public synchronized int planTasks(long nowNanos) {
+        long sold = sales.sum();
+        double elapsed = lastPlanTime < 0 ? 0 : (nowNanos - lastPlanTime) / 1e9;
+        if (elapsed > 0)
+            saleRate += RATE_SMOOTHING * ((sold - lastSold) / elapsed - saleRate);
+        lastPlanTime = nowNanos;
+        lastSold = sold;
+
+        int inFlight = inFlightTasks.get();
+        int limit = maxTasks > 0 ? maxTasks : threadPool.getWorkerCount();
+        ProductionSnapshot snapshot = new ProductionSnapshot(carStorage.getSize(), getTargetLevel(), carStorage.getCapacity(),
+                saleRate, inFlight, limit, jobSize, elapsed);
+        int desired = Math.min(limit, Math.max(0, policy.desiredTasks(snapshot)));
+        int tasks = Math.max(0, desired - inFlight);
+        inFlightTasks.addAndGet(tasks);
+        return tasks;
+    }
+
+    public Worker createWorker() {
+        Worker worker = new Worker(bodyStorage, motorStorage, accessoryStorage, carStorage, workerBatchSize, jobSize);
+        worker.setRecycler(recycler);
+        worker.setJournal(journal);
+        worker.setBuiltCounter(builtCars);
+        worker.setScheduler(scheduler);
+        worker.setLeadTimes(leadTimes);
+        return worker;
+    }
+
+    public void setRecycler(CarRecycler recycler) {this.recycler = recycler; }
+    public void setJournal(FactoryJournal journal) {this.journal = journal; }
+    public void setScheduler(VariantScheduler scheduler) {this.scheduler = scheduler; }
+    public void setLeadTimes(LeadTimeMetrics leadTimes) {this.leadTimes = leadTimes; }
+
+    /** Builds to the open orders plus a safety stock instead of the fixed target level. */
+    public void setOrderBook(OrderBook orderBook, int safetyStock) {
+        this.orderBook = orderBook;
+        this.safetyStock = safetyStock;
+    }
+
+    public int getTargetLevel() {
+        return orderBook == null ? targetLevel : Math.min(carStorage.getCapacity(), orderBook.getOpenOrders() + safetyStock);
+    }
+
+    public void taskFinished() {inFlightTasks.decrementAndGet(); }
+    public int getInFlightTasks() {return inFlightTasks.get(); }
+    public double getSaleRate() {return saleRate; }
+    public int getInterval() {return interval; }
+    public int getJobSize() {return jobSize; }
+
+    private boolean submitJob() {
+        Worker worker = createWorker();
+        return threadPool.submitTask(() -> {
+            try {
+                worker.run();
+            } finally {
+                taskFinished();
+            }
+        });
+    }
+
     public void stop() {
         System.out.println("Stopping the factory...");
         threadPool.shutdown();
         System.out.println("Factory stopped.");
     }
 
-    public synchronized void notifySale() {notify(); }
+    public void notifySale() {sales.increment(); }
+    public long getBuiltCars() {return builtCars.sum(); }
 }
@@ -0,0 +1,37 @@
+package fabrika.controller;
+
+public class PidPolicy implements ProductionPolicy {
+    private final double kp;
+    private final double ki;
+    private final double kd;
+    private final double leadTimeSeconds;
+    private double integral;
+    private double lastError;
+    private boolean started;
+
+    public PidPolicy(double kp, double ki, double kd, double leadTimeSeconds) {
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.leadTimeSeconds = leadTimeSeconds;
+    }
+
+    @Override
+    public int desiredTasks(ProductionSnapshot snapshot) {
+        double dt = snapshot.getElapsedSeconds();
+        double error = snapshot.getTargetLevel() - snapshot.getLevel();
+        double derivative = started && dt > 0 ? (error - lastError) / dt : 0;
+        lastError = error;
+        started = true;
+
+        double feedForward = snapshot.getSaleRate() * leadTimeSeconds;
+        double candidateIntegral = integral + error * dt;
+        double cars = feedForward + kp * error + ki * candidateIntegral + kd * derivative;
+
+        int tasks = snapshot.jobsFor(cars);
+        // Anti-windup: only accumulate while the output is not saturated.
+        if (tasks > 0 && tasks < snapshot.getMaxTasks())
+            integral = candidateIntegral;
+        return tasks;
+    }
+}
@@ -0,0 +1,29 @@
+package fabrika.controller;
+
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+import java.io.Serializable;
+
+/** Policies are serialized with their Controller, including any state they keep between ticks. */
+public interface ProductionPolicy extends Serializable {
+    /** Number of assembly jobs that should be queued or running after this tick. */
+    int desiredTasks(ProductionSnapshot snapshot);
+
+    static ProductionPolicy fromConfig(FactoryConfig config) {
+        String name = config.getString("ControllerPolicy", "threshold");
+        switch (name) {
+            case "threshold":
+                return new ThresholdPolicy();
+            case "rate":
+                return new RateMatchingPolicy(config.getDouble("ControllerLeadTime", 1.0));
+            case "pid":
+                return new PidPolicy(config.getDouble("ControllerPidKp", 0.5),
+                        config.getDouble("ControllerPidKi", 0.1),
+                        config.getDouble("ControllerPidKd", 0.05),
+                        config.getDouble("ControllerLeadTime", 1.0));
+            default:
+                throw new FactoryException("Error: Unknown controller policy: " + name);
+        }
+    }
+}
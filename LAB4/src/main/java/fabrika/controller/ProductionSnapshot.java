@@ -0,0 +1,37 @@
+package fabrika.controller;
+
+public class ProductionSnapshot {
+    private final int level;
+    private final int targetLevel;
+    private final int capacity;
+    private final double saleRate;
+    private final int inFlightTasks;
+    private final int maxTasks;
+    private final int jobSize;
+    private final double elapsedSeconds;
+
+    public ProductionSnapshot(int level, int targetLevel, int capacity, double saleRate,
+                              int inFlightTasks, int maxTasks, int jobSize, double elapsedSeconds) {
+        this.level = level;
+        this.targetLevel = targetLevel;
+        this.capacity = capacity;
+        this.saleRate = saleRate;
+        this.inFlightTasks = inFlightTasks;
+        this.maxTasks = maxTasks;
+        this.jobSize = jobSize;
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    public int getLevel() {return level; }
+    public int getTargetLevel() {return targetLevel; }
+    public int getCapacity() {return capacity; }
+    public double getSaleRate() {return saleRate; }
+    public int getInFlightTasks() {return inFlightTasks; }
+    public int getMaxTasks() {return maxTasks; }
+    public int getJobSize() {return jobSize; }
+    public double getElapsedSeconds() {return elapsedSeconds; }
+
+    public int jobsFor(double cars) {
+        return cars <= 0 ? 0 : (int) Math.ceil(cars / jobSize);
+    }
+}
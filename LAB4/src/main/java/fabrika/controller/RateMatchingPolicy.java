@@ -0,0 +1,13 @@
+package fabrika.controller;
+
+public class RateMatchingPolicy implements ProductionPolicy {
+    private final double leadTimeSeconds;
+
+    public RateMatchingPolicy(double leadTimeSeconds) {this.leadTimeSeconds = leadTimeSeconds; }
+
+    @Override
+    public int desiredTasks(ProductionSnapshot snapshot) {
+        double cars = snapshot.getSaleRate() * leadTimeSeconds + snapshot.getTargetLevel() - snapshot.getLevel();
+        return snapshot.jobsFor(cars);
+    }
+}
@@ -0,0 +1,8 @@
+package fabrika.controller;
+
+public class ThresholdPolicy implements ProductionPolicy {
+    @Override
+    public int desiredTasks(ProductionSnapshot snapshot) {
+        return snapshot.getLevel() <= snapshot.getTargetLevel() ? snapshot.getMaxTasks() : 0;
+    }
+}
@@ -1,53 +1,58 @@
 package fabrika.dealer;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-
 import fabrika.car.CarModel;
+import fabrika.car.CarRecycler;
 import fabrika.controller.Controller;
+import fabrika.journal.FactoryJournal;
+import fabrika.metrics.LeadTimeMetrics;
 import fabrika.storage.Storage;
+import fabrika.workers.TimingWheel;
 
-public class Dealer implements Runnable {
-    private static final String LOG_DIR = "logs";
-    private static final String LOG_FILE = LOG_DIR + "/factory.log";
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
+public class Dealer implements Runnable {
     private final Storage<CarModel> carStorage;
     private final int dealerId;
-    private int delay;
-    private final boolean logEnabled;
+    private volatile int delay;
+    private final SaleLog saleLog;
     private final Controller controller;
-    private int soldCars = 0;
+    private CarRecycler recycler;
+    private FactoryJournal journal;
+    private OrderBook orderBook;
+    private LeadTimeMetrics leadTimes;
+    private SaleListener saleListener;
+    // Read by monitors and checkpoints, and written by a wheel thread when the dealer runs on a timing wheel.
+    private final AtomicInteger soldCars = new AtomicInteger();
 
     public void setDelay(int delay) {this.delay = delay; }
     public int getDelay() {return delay; }
-    public int getSoldCarsCount() {return soldCars; }
+    public int getSoldCarsCount() {return soldCars.get(); }
+    public void setSoldCarsCount(int soldCars) {this.soldCars.set(soldCars); }
+    public int getDealerId() {return dealerId; }
+    public void setRecycler(CarRecycler recycler) {this.recycler = recycler; }
+    public void setJournal(FactoryJournal journal) {this.journal = journal; }
+    public void setOrderBook(OrderBook orderBook) {this.orderBook = orderBook; }
+    public void setLeadTimes(LeadTimeMetrics leadTimes) {this.leadTimes = leadTimes; }
+    public void setSaleListener(SaleListener saleListener) {this.saleListener = saleListener; }
 
     public Dealer(Storage<CarModel> carStorage, int dealerId, int delay, boolean logEnabled, Controller controller) {
+        this(carStorage, dealerId, delay, logEnabled ? SaleLog.getDefault() : null, controller);
+    }
+
+    public Dealer(Storage<CarModel> carStorage, int dealerId, int delay, SaleLog saleLog, Controller controller) {
         this.carStorage = carStorage;
         this.dealerId = dealerId;
         this.delay = delay;
-        this.logEnabled = logEnabled;
+        this.saleLog = saleLog;
         this.controller = controller;
-
-        File logDir = new File(LOG_DIR);
-        if (!logDir.exists())
-            logDir.mkdir();
     }
 
     @Override
     public void run() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                CarModel car = carStorage.take();
-                soldCars++;
-
-                if (logEnabled)
-                    logSale(car);
-
-                controller.notifySale();
+                sell(orderBook != null ? awaitOrder() : carStorage.take());
                 Thread.sleep(delay);
             }
         } catch (InterruptedException e) {
@@ -55,15 +60,83 @@ public class Dealer implements Runnable {
         }
     }
 
-    private void logSale(CarModel car) {
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        String logEntry = String.format("%s: Dealer %d: Car %d (Body: %d, Motor: %d, Accessory: %d)%n",
-                time, dealerId, car.getId(), car.getBody().getId(), car.getEngine().getId(), car.getAccessory().getId());
-
-        try (FileWriter writer = new FileWriter(LOG_FILE, true)) {
-            writer.write(logEntry);
-        } catch (IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
+    /** Places an order of a random priority and waits until the dispatcher fills it. */
+    private CarModel awaitOrder() throws InterruptedException {
+        Order order = orderBook.place(dealerId, ThreadLocalRandom.current().nextInt(orderBook.getPriorities()));
+        try {
+            return order.awaitCar();
+        } catch (InterruptedException e) {
+            // Filled just before the cancel: the car is already this dealer's, so the sale goes through.
+            if (!orderBook.cancel(order))
+                sell(order.collect());
+            throw e;
         }
     }
-}
\ No newline at end of file
+
+    /** Sells from a timing wheel instead of a thread: one car or order check per tick, backing off while there is none. */
+    public TimingWheel.Periodic ticker() {
+        return new TimingWheel.Periodic() {
+            private Order order;
+            private int idleTicks;
+
+            @Override
+            public long tick() {
+                CarModel car;
+                if (orderBook != null) {
+                    if (order == null)
+                        order = orderBook.place(dealerId, ThreadLocalRandom.current().nextInt(orderBook.getPriorities()));
+                    car = order.collect();
+                    if (car != null)
+                        order = null;
+                } else {
+                    car = carStorage.poll();
+                }
+                if (car == null)
+                    return TimingWheel.retryDelay(idleTicks++);
+                idleTicks = 0;
+                sell(car);
+                return delay;
+            }
+
+            @Override
+            public void cancel() {
+                // As with a dealer thread: an order filled but not yet collected is sold, an open one withdrawn.
+                if (order != null && !orderBook.cancel(order))
+                    sell(order.collect());
+                order = null;
+            }
+        };
+    }
+
+    public boolean trySell() {
+        CarModel car = carStorage.poll();
+        if (car == null) return false;
+        sell(car);
+        return true;
+    }
+
+    public void sell(CarModel car) {
+        int sold = soldCars.incrementAndGet();
+
+        if (leadTimes != null)
+            leadTimes.carSold(car, System.nanoTime());
+
+        if (saleLog != null)
+            saleLog.log(dealerId, car);
+
+        // Dealers on a remote node have no controller; their sale listener reports the sale to the storage server.
+        if (controller != null)
+            controller.notifySale();
+
+        if (journal != null)
+            journal.sold(dealerId, car, sold);
+
+        if (saleListener != null)
+            saleListener.sold(dealerId, car, sold);
+
+        // Nothing keeps the car past this point: the sale log and journal copy its ids, the order has handed it out
+        // and checkpoints copy ids while the storages are frozen, so it can go back to the pools right away.
+        if (recycler != null)
+            recycler.recycle(car);
+    }
+}
@@ -0,0 +1,59 @@
+package fabrika.dealer;
+
+import fabrika.car.CarModel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A dealer's request for one car. Priority 0 is the most urgent; the deadline is in System.nanoTime() terms.
+ * The order hands its car out once and forgets it, so a sold car that goes back to the pools is not kept alive here.
+ */
+public class Order {
+    private static final Object CANCELLED = new Object();
+    private static final Object COLLECTED = new Object();
+
+    private final int dealerId;
+    private final int priority;
+    private final long createdNanos;
+    private final long deadlineNanos;
+    // Null while open, then the car until it is collected.
+    private final AtomicReference<Object> state = new AtomicReference<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public Order(int dealerId, int priority, long createdNanos, long deadlineNanos) {
+        this.dealerId = dealerId;
+        this.priority = priority;
+        this.createdNanos = createdNanos;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public int getDealerId() {return dealerId; }
+    public int getPriority() {return priority; }
+    public long getCreatedNanos() {return createdNanos; }
+    public long getDeadlineNanos() {return deadlineNanos; }
+    public boolean isOpen() {return state.get() == null; }
+
+    /** Blocks until the order is filled and collects the car; an interrupted dealer should cancel the order through the book. */
+    public CarModel awaitCar() throws InterruptedException {
+        done.await();
+        return collect();
+    }
+
+    /** The car of a filled order, handed out once; null while open, after a cancel or once collected. */
+    CarModel collect() {
+        Object current = state.get();
+        if (current instanceof CarModel && state.compareAndSet(current, COLLECTED))
+            return (CarModel) current;
+        return null;
+    }
+
+    boolean complete(CarModel car) {return finish(car); }
+    boolean cancel() {return finish(CANCELLED); }
+
+    private boolean finish(Object result) {
+        if (!state.compareAndSet(null, result)) return false;
+        done.countDown();
+        return true;
+    }
+}
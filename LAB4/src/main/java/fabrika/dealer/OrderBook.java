@@ -0,0 +1,121 @@
+package fabrika.dealer;
+
+import fabrika.car.CarModel;
+import fabrika.metrics.LatencyHistogram;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pending dealer orders, one lock-free FIFO queue per priority level.
+ * The most urgent order is the overdue head with the earliest deadline, or else the head of the highest priority queue,
+ * so a low priority order cannot starve once its deadline has passed.
+ */
+public class OrderBook {
+    public static final int DEFAULT_PRIORITIES = 3;
+    public static final int DEFAULT_DEADLINE = 2000;
+
+    private final ConcurrentLinkedQueue<Order>[] queues;
+    private final long deadlineNanos;
+    // One permit per queued order, so takers only block while every queue is empty.
+    private final Semaphore queued = new Semaphore(0);
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder placed = new LongAdder();
+    private final LongAdder filled = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** Orders of priority p are due (p + 1) * deadlineMillis after they are placed. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OrderBook(int priorities, int deadlineMillis) {
+        queues = new ConcurrentLinkedQueue[priorities];
+        for (int i = 0; i < priorities; i++)
+            queues[i] = new ConcurrentLinkedQueue<>();
+        deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    public int getPriorities() {return queues.length; }
+
+    public Order place(int dealerId, int priority) {
+        priority = Math.max(0, Math.min(priority, queues.length - 1));
+        long now = System.nanoTime();
+        Order order = new Order(dealerId, priority, now, now + (priority + 1) * deadlineNanos);
+        open.incrementAndGet();
+        placed.increment();
+        queues[priority].add(order);
+        queued.release();
+        return order;
+    }
+
+    /** Withdraws an order nobody waits for any more; returns false if it was already filled. */
+    public boolean cancel(Order order) {
+        if (!order.cancel()) return false;
+        open.decrementAndGet();
+        return true;
+    }
+
+    /** Waits until an order is pending without taking it; a cancelled one may still count until it is polled. */
+    public void awaitPending() throws InterruptedException {
+        queued.acquire();
+        queued.release();
+    }
+
+    /** Takes the most urgent open order out of the book, waiting for one if none is pending; fill it with complete. */
+    public Order awaitOrder() throws InterruptedException {
+        while (true) {
+            queued.acquire();
+            Order order = removeMostUrgent();
+            if (order.isOpen()) return order;
+        }
+    }
+
+    /** Like awaitOrder, but returns null at once if no open order is pending. */
+    public Order pollOrder() {
+        while (queued.tryAcquire()) {
+            Order order = removeMostUrgent();
+            if (order.isOpen()) return order;
+        }
+        return null;
+    }
+
+    /** Gives the car to an order taken from the book; false if the dealer cancelled it meanwhile. */
+    public boolean complete(Order order, CarModel car) {
+        if (!order.complete(car)) return false;
+        long now = System.nanoTime();
+        open.decrementAndGet();
+        filled.increment();
+        latency.record(now - order.getCreatedNanos());
+        if (now > order.getDeadlineNanos())
+            late.increment();
+        return true;
+    }
+
+    private Order removeMostUrgent() {
+        while (true) {
+            long now = System.nanoTime();
+            Order best = null;
+            Order firstOpen = null;
+            for (ConcurrentLinkedQueue<Order> queue : queues) {
+                Order head = queue.peek();
+                if (head == null) continue;
+                if (firstOpen == null) firstOpen = head;
+                if (head.getDeadlineNanos() - now <= 0 && (best == null || head.getDeadlineNanos() - best.getDeadlineNanos() < 0))
+                    best = head;
+            }
+            if (best == null) best = firstOpen;
+            // A permit was taken, so an order is queued; an empty scan only means a concurrent taker moved heads.
+            if (best != null && queues[best.getPriority()].remove(best))
+                return best;
+        }
+    }
+
+    /** Orders placed but not yet filled or cancelled; this is the backlog the controller builds to. */
+    public int getOpenOrders() {return open.get(); }
+    public long getPlacedOrders() {return placed.sum(); }
+    public long getFilledOrders() {return filled.sum(); }
+    public long getLateOrders() {return late.sum(); }
+    public LatencyHistogram getLatency() {return latency; }
+}
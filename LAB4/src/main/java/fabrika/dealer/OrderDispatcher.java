@@ -0,0 +1,40 @@
+package fabrika.dealer;
+
+import fabrika.car.CarModel;
+import fabrika.storage.Storage;
+
+/** Hands every finished car from the car storage to the most urgent open order. */
+public class OrderDispatcher implements Runnable {
+    private final Storage<CarModel> carStorage;
+    private final OrderBook orderBook;
+
+    public OrderDispatcher(Storage<CarModel> carStorage, OrderBook orderBook) {
+        this.carStorage = carStorage;
+        this.orderBook = orderBook;
+    }
+
+    @Override
+    public void run() {
+        CarModel car = null;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // No car is taken while nobody wants one, but the order is picked only once the car is in hand,
+                // so an order placed while the storage was empty can still be the most urgent one.
+                orderBook.awaitPending();
+                car = carStorage.take();
+                Order order = orderBook.pollOrder();
+                while (order == null || !orderBook.complete(order, car)) {
+                    // Every pending order was cancelled meanwhile: the car goes back, or waits for one if there is no room.
+                    if (order == null && carStorage.offer(car)) break;
+                    order = order == null ? orderBook.awaitOrder() : orderBook.pollOrder();
+                }
+                car = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (car != null && !carStorage.offer(car))
+                System.err.println("Order dispatcher stopped holding car " + car.getId() + "; the car storage is full");
+        }
+    }
+}
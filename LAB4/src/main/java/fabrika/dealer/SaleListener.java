@@ -0,0 +1,8 @@
+package fabrika.dealer;
+
+import fabrika.car.CarModel;
+
+/** Told about every sale of a dealer, e.g. to acknowledge a car taken from a remote storage. */
+public interface SaleListener {
+    void sold(int dealerId, CarModel car, int soldCount);
+}
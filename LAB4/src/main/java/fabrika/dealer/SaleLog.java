@@ -0,0 +1,236 @@
+package fabrika.dealer;
+
+import fabrika.car.CarModel;
+import fabrika.exeptions.FactoryException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sale audit log written by one background thread. A dealer never waits for the disk: once MAX_PENDING records
+ * are queued, further sales are dropped and counted. The first drop is reported at once and the total on close;
+ * the counts are also on the SaleLog MXBean.
+ */
+public class SaleLog implements AutoCloseable {
+    public static final String DEFAULT_FILE = "logs/factory.log";
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 5;
+    private static final int MAX_PENDING = 1 << 16;
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private static SaleLog defaultLog;
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final ConcurrentLinkedQueue<SaleRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong logged = new AtomicLong();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final byte[] timeBytes = new byte[8];
+    private final Thread writer;
+    private FileChannel channel;
+    private long fileSize;
+    private long cachedSecond = -1;
+    private volatile boolean running = true;
+
+    public SaleLog(String file, long maxBytes, int maxFiles) {
+        this.file = Paths.get(file);
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        try {
+            Path dir = this.file.toAbsolutePath().getParent();
+            if (dir != null)
+                Files.createDirectories(dir);
+            openChannel();
+        } catch (IOException e) {
+            throw new FactoryException("Error opening log file: " + e.getMessage());
+        }
+
+        writer = new Thread(this::writeLoop, "sale-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public static synchronized SaleLog getDefault() {
+        if (defaultLog == null)
+            defaultLog = new SaleLog(DEFAULT_FILE, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+        return defaultLog;
+    }
+
+    public long getDroppedCount() {return dropped.get(); }
+    public long getLoggedCount() {return logged.get(); }
+    public int getPendingCount() {return pending.get(); }
+
+    public void log(int dealerId, CarModel car) {
+        if (pending.incrementAndGet() > MAX_PENDING) {
+            pending.decrementAndGet();
+            if (dropped.getAndIncrement() == 0)
+                System.err.println("Sale log " + file + " is falling behind; dropping sale records");
+            return;
+        }
+        queue.offer(new SaleRecord(System.currentTimeMillis(), dealerId, car.getId(),
+                car.getBody().getId(), car.getEngine().getId(), car.getAccessory().getId()));
+    }
+
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0)
+            System.err.println("Sale log " + file + " dropped " + dropped.get() + " sale records");
+    }
+
+    private void writeLoop() {
+        try {
+            while (running) {
+                if (!drain())
+                    LockSupport.parkNanos(this, FLUSH_INTERVAL);
+            }
+            drain();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error writing to log file: " + e.getMessage());
+        }
+    }
+
+    private boolean drain() throws IOException {
+        SaleRecord record;
+        boolean wrote = false;
+        while ((record = queue.poll()) != null) {
+            pending.decrementAndGet();
+            if (buffer.remaining() < 128)
+                flush();
+            format(record);
+            logged.incrementAndGet();
+            wrote = true;
+        }
+        flush();
+        return wrote;
+    }
+
+    private void format(SaleRecord record) {
+        putTime(record.timeMillis);
+        putAscii(": Dealer ");
+        putInt(record.dealerId);
+        putAscii(": Car ");
+        putInt(record.carId);
+        putAscii(" (Body: ");
+        putInt(record.bodyId);
+        putAscii(", Motor: ");
+        putInt(record.engineId);
+        putAscii(", Accessory: ");
+        putInt(record.accessoryId);
+        buffer.put((byte) ')');
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    private void putTime(long timeMillis) {
+        long second = timeMillis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            LocalTime time = LocalTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+            writeTwoDigits(0, time.getHour());
+            timeBytes[2] = ':';
+            writeTwoDigits(3, time.getMinute());
+            timeBytes[5] = ':';
+            writeTwoDigits(6, time.getSecond());
+        }
+        buffer.put(timeBytes);
+    }
+
+    private void writeTwoDigits(int offset, int value) {
+        timeBytes[offset] = (byte) ('0' + value / 10);
+        timeBytes[offset + 1] = (byte) ('0' + value % 10);
+    }
+
+    private void putAscii(String text) {
+        for (int i = 0; i < text.length(); i++)
+            buffer.put((byte) text.charAt(i));
+    }
+
+    private void putInt(int value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10)
+            divisor *= 10;
+        for (; divisor > 0; divisor /= 10)
+            buffer.put((byte) ('0' + value / divisor % 10));
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        if (buffer.hasRemaining() && fileSize + buffer.remaining() > maxBytes && fileSize > 0)
+            rotate();
+        while (buffer.hasRemaining())
+            fileSize += channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = rotated(i);
+            if (Files.exists(source))
+                Files.move(source, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (maxFiles > 0)
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        else
+            Files.delete(file);
+        openChannel();
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private static final class SaleRecord {
+        final long timeMillis;
+        final int dealerId;
+        final int carId;
+        final int bodyId;
+        final int engineId;
+        final int accessoryId;
+
+        SaleRecord(long timeMillis, int dealerId, int carId, int bodyId, int engineId, int accessoryId) {
+            this.timeMillis = timeMillis;
+            this.dealerId = dealerId;
+            this.carId = carId;
+            this.bodyId = bodyId;
+            this.engineId = engineId;
+            this.accessoryId = accessoryId;
+        }
+    }
+}
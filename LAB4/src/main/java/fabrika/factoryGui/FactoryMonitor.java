@@ -0,0 +1,117 @@
+package fabrika.factoryGui;
+
+import fabrika.controller.Controller;
+import fabrika.dealer.Dealer;
+import fabrika.metrics.LeadTimeMetrics;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+import fabrika.workers.ThreadPool;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Samples the factory counters off the EDT and publishes them as immutable snapshots.
+ * Every read is a volatile or striped counter read, so sampling never takes a storage lock.
+ * At most one EDT update is queued at a time; if the EDT falls behind, it simply gets the newest snapshot.
+ */
+public class FactoryMonitor implements AutoCloseable {
+    public static final int DEFAULT_INTERVAL = 250;
+
+    private final Storage<?>[] storages;
+    private final Supplier<?>[] suppliers;
+    private final List<Dealer> dealers;
+    private final ThreadPool threadPool;
+    private final Controller controller;
+    private final Consumer<FactorySnapshot> listener;
+    private final AtomicReference<FactorySnapshot> latest = new AtomicReference<>();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "view-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FactorySnapshot previous;
+    private volatile LeadTimeMetrics leadTimes;
+
+    public FactoryMonitor(Storage<?> bodyStorage, Storage<?> motorStorage, Storage<?> accessoryStorage, Storage<?> carStorage,
+                          Supplier<?> bodySupplier, Supplier<?> motorSupplier, Supplier<?> accessorySupplier,
+                          List<Dealer> dealers, ThreadPool threadPool, Controller controller, Consumer<FactorySnapshot> listener) {
+        this.storages = new Storage<?>[]{bodyStorage, motorStorage, accessoryStorage, carStorage};
+        this.suppliers = new Supplier<?>[]{bodySupplier, motorSupplier, accessorySupplier};
+        this.dealers = dealers;
+        this.threadPool = threadPool;
+        this.controller = controller;
+        this.listener = listener;
+    }
+
+    public FactorySnapshot getLatest() {return latest.get(); }
+    public void setLeadTimes(LeadTimeMetrics leadTimes) {this.leadTimes = leadTimes; }
+
+    public void start(long intervalMillis) {
+        sampler.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {sampler.shutdownNow(); }
+
+    private void sample() {
+        long now = System.nanoTime();
+        long sold = 0;
+        for (Dealer dealer : dealers)
+            sold += dealer.getSoldCarsCount();
+        long bodiesSupplied = suppliers[0].getSuppliedCount();
+        long motorsSupplied = suppliers[1].getSuppliedCount();
+        long accessoriesSupplied = suppliers[2].getSuppliedCount();
+        long built = controller.getBuiltCars();
+
+        double suppliedRate = 0;
+        double builtRate = 0;
+        double soldRate = 0;
+        double[] supplierRates = new double[suppliers.length];
+        int[] supplierDelays = new int[suppliers.length];
+        for (int i = 0; i < suppliers.length; i++)
+            supplierDelays[i] = suppliers[i].getEffectiveDelay();
+        if (previous != null && now > previous.timeNanos) {
+            double seconds = (now - previous.timeNanos) / 1e9;
+            supplierRates[0] = (bodiesSupplied - previous.bodiesSupplied) / seconds;
+            supplierRates[1] = (motorsSupplied - previous.motorsSupplied) / seconds;
+            supplierRates[2] = (accessoriesSupplied - previous.accessoriesSupplied) / seconds;
+            suppliedRate = (bodiesSupplied + motorsSupplied + accessoriesSupplied
+                    - previous.bodiesSupplied - previous.motorsSupplied - previous.accessoriesSupplied) / seconds;
+            builtRate = (built - previous.carsBuilt) / seconds;
+            soldRate = (sold - previous.carsSold) / seconds;
+        }
+
+        double[][] dwell = null;
+        double[] leadTime = null;
+        LeadTimeMetrics tracing = leadTimes;
+        if (tracing != null) {
+            dwell = new double[LeadTimeMetrics.STORAGES.length][];
+            for (int i = 0; i < dwell.length; i++)
+                dwell[i] = tracing.getDwellMicros(i);
+            leadTime = tracing.getLeadTimeMicros();
+        }
+
+        FactorySnapshot snapshot = new FactorySnapshot(now, storages[0].getSize(), storages[1].getSize(),
+                storages[2].getSize(), storages[3].getSize(), bodiesSupplied, motorsSupplied, accessoriesSupplied,
+                built, sold, threadPool.getQueueSize(), threadPool.getLiveThreadCount(), suppliedRate, builtRate, soldRate,
+                supplierRates, supplierDelays, dwell, leadTime);
+        previous = snapshot;
+        latest.set(snapshot);
+
+        if (updateQueued.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::deliver);
+    }
+
+    private void deliver() {
+        updateQueued.set(false);
+        listener.accept(latest.get());
+    }
+}
@@ -0,0 +1,57 @@
+package fabrika.factoryGui;
+
+/** Counters of the factory read at one moment, plus the per-second rates since the previous snapshot. */
+public final class FactorySnapshot {
+    final long timeNanos;
+    final int bodies;
+    final int motors;
+    final int accessories;
+    final int cars;
+    final long bodiesSupplied;
+    final long motorsSupplied;
+    final long accessoriesSupplied;
+    final long carsBuilt;
+    final long carsSold;
+    final int queuedTasks;
+    final int liveThreads;
+    final double suppliedRate;
+    final double builtRate;
+    final double soldRate;
+    // Measured supply rate per second and effective delay of the body, motor and accessory suppliers.
+    final double[] supplierRates;
+    final int[] supplierDelays;
+    // Dwell percentiles per storage and lead-time percentiles in microseconds, or null without tracing.
+    final double[][] dwellMicros;
+    final double[] leadTimeMicros;
+
+    FactorySnapshot(long timeNanos, int bodies, int motors, int accessories, int cars,
+                    long bodiesSupplied, long motorsSupplied, long accessoriesSupplied, long carsBuilt, long carsSold,
+                    int queuedTasks, int liveThreads, double suppliedRate, double builtRate, double soldRate,
+                    double[] supplierRates, int[] supplierDelays, double[][] dwellMicros, double[] leadTimeMicros) {
+        this.timeNanos = timeNanos;
+        this.bodies = bodies;
+        this.motors = motors;
+        this.accessories = accessories;
+        this.cars = cars;
+        this.bodiesSupplied = bodiesSupplied;
+        this.motorsSupplied = motorsSupplied;
+        this.accessoriesSupplied = accessoriesSupplied;
+        this.carsBuilt = carsBuilt;
+        this.carsSold = carsSold;
+        this.queuedTasks = queuedTasks;
+        this.liveThreads = liveThreads;
+        this.suppliedRate = suppliedRate;
+        this.builtRate = builtRate;
+        this.soldRate = soldRate;
+        this.supplierRates = supplierRates;
+        this.supplierDelays = supplierDelays;
+        this.dwellMicros = dwellMicros;
+        this.leadTimeMicros = leadTimeMicros;
+    }
+
+    public long getCarsSold() {return carsSold; }
+    public long getCarsBuilt() {return carsBuilt; }
+    public double getSuppliedRate() {return suppliedRate; }
+    public double getBuiltRate() {return builtRate; }
+    public double getSoldRate() {return soldRate; }
+}
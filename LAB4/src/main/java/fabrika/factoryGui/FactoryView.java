@@ -4,9 +4,13 @@ import fabrika.CarPart.Accessory;
 import fabrika.CarPart.BodyPart;
 import fabrika.CarPart.Engine;
 import fabrika.car.CarModel;
+import fabrika.checkpoint.FactoryCheckpoint;
 import fabrika.controller.Controller;
 import fabrika.dealer.Dealer;
+import fabrika.exeptions.FactoryException;
+import fabrika.metrics.LeadTimeMetrics;
 import fabrika.storage.Storage;
+import fabrika.storage.StorageGate;
 import fabrika.supplier.Supplier;
 import fabrika.workers.ThreadPool;
 
@@ -29,9 +33,12 @@ public class FactoryView extends JFrame {
     private Supplier<Accessory> accessorySupplier;
     private transient List<Dealer> dealers;
     private transient ThreadPool threadPool;
-    private transient Thread bodySupplierThread;
-    private transient Thread motorSupplierThread;
-    private transient Thread accessorySupplierThread;
+    private transient List<Thread> bodySupplierThreads;
+    private transient List<Thread> motorSupplierThreads;
+    private transient List<Thread> accessorySupplierThreads;
+    private transient FactoryCheckpoint checkpoint;
+    private transient FactoryMonitor monitor;
+    private transient LeadTimeMetrics leadTimes;
 
 
     private final JLabel bodyCountLabel;
@@ -43,17 +50,22 @@ public class FactoryView extends JFrame {
     private final JLabel bodySuppliedLabel;
     private final JLabel motorSuppliedLabel;
     private final JLabel accessorySuppliedLabel;
+    private final JLabel[] supplierRateLabels = new JLabel[3];
+    private final JLabel liveWorkersLabel;
+    private final JLabel[] dwellLabels = new JLabel[LeadTimeMetrics.STORAGES.length];
+    private final JLabel leadTimeLabel;
 
     private final JSlider bodySpeedSlider;
     private final JSlider motorSpeedSlider;
     private final JSlider accessorySpeedSlider;
     private final JSlider dealerSpeedSlider;
-    private final JTextField workerCountField;
+    private final JSpinner workerCountSpinner;
+    private final ThroughputChart throughputChart;
 
     public FactoryView(Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage,
                        Storage<CarModel> carStorage, Supplier<BodyPart> bodySupplier, Supplier<Engine> motorSupplier,
                        Supplier<Accessory> accessorySupplier, List<Dealer> dealers, ThreadPool threadPool,
-                       Controller factoryController, Thread bodyThread, Thread motorThread, Thread accessoryThread) {
+                       Controller factoryController, List<Thread> bodyThreads, List<Thread> motorThreads, List<Thread> accessoryThreads) {
         this.bodyStorage = bodyStorage;
         this.motorStorage = motorStorage;
         this.accessoryStorage = accessoryStorage;
@@ -63,17 +75,17 @@ public class FactoryView extends JFrame {
         this.accessorySupplier = accessorySupplier;
         this.dealers = dealers;
         this.threadPool = threadPool;
-        this.bodySupplierThread = bodyThread;
-        this.motorSupplierThread = motorThread;
-        this.accessorySupplierThread = accessoryThread;
+        this.bodySupplierThreads = bodyThreads;
+        this.motorSupplierThreads = motorThreads;
+        this.accessorySupplierThreads = accessoryThreads;
 
         setTitle("Factory Simulator");
-        setSize(700, 450);
+        setSize(700, 600);
         setResizable(false);
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setLayout(new BorderLayout());
 
-        JPanel suppliersPanel = new JPanel(new GridLayout(3, 3));
+        JPanel suppliersPanel = new JPanel(new GridLayout(3, 4));
         suppliersPanel.setBorder(BorderFactory.createTitledBorder("Suppliers"));
 
         bodySpeedSlider = createSlider(bodySupplier.getDelay());
@@ -87,20 +99,25 @@ public class FactoryView extends JFrame {
         bodySuppliedLabel = new JLabel("Supplied: 0");
         motorSuppliedLabel = new JLabel("Supplied: 0");
         accessorySuppliedLabel = new JLabel("Supplied: 0");
+        for (int i = 0; i < supplierRateLabels.length; i++)
+            supplierRateLabels[i] = new JLabel("Rate: 0/s");
 
         suppliersPanel.add(new JLabel("Body Supplier Speed (ms):"));
         suppliersPanel.add(bodySpeedSlider);
         suppliersPanel.add(bodySuppliedLabel);
+        suppliersPanel.add(supplierRateLabels[0]);
 
         suppliersPanel.add(new JLabel("Motor Supplier Speed (ms):"));
         suppliersPanel.add(motorSpeedSlider);
         suppliersPanel.add(motorSuppliedLabel);
+        suppliersPanel.add(supplierRateLabels[1]);
 
         suppliersPanel.add(new JLabel("Accessory Supplier Speed (ms):"));
         suppliersPanel.add(accessorySpeedSlider);
         suppliersPanel.add(accessorySuppliedLabel);
+        suppliersPanel.add(supplierRateLabels[2]);
 
-        JPanel storagesPanel = new JPanel(new GridLayout(3, 5));
+        JPanel storagesPanel = new JPanel(new GridLayout(4, 5));
         storagesPanel.setBorder(BorderFactory.createTitledBorder("Storages"));
 
         storagesPanel.add(new JLabel(""));
@@ -131,14 +148,24 @@ public class FactoryView extends JFrame {
         storagesPanel.add(accessoryCountLabel);
         storagesPanel.add(carCountLabel);
 
+        storagesPanel.add(new JLabel("Dwell p50/p99/p99.9 ms:"));
+        for (int i = 0; i < dwellLabels.length; i++) {
+            dwellLabels[i] = new JLabel("-");
+            storagesPanel.add(dwellLabels[i]);
+        }
+
         JPanel workersPanel = new JPanel();
         workersPanel.setBorder(BorderFactory.createTitledBorder("Workers"));
 
-        workerCountField = new JTextField(String.valueOf(threadPool.getWorkerCount()), 5);
-        workerCountField.addActionListener(e -> threadPool.setWorkerCount(Integer.parseInt(workerCountField.getText())));
+        workersPanel.setLayout(new GridLayout(2, 2));
+        workerCountSpinner = new JSpinner(new SpinnerNumberModel(threadPool.getWorkerCount(), 1, 1024, 1));
+        workerCountSpinner.addChangeListener(e -> threadPool.setWorkerCount((Integer) workerCountSpinner.getValue()));
+        liveWorkersLabel = new JLabel();
 
         workersPanel.add(new JLabel("Number of Workers:"));
-        workersPanel.add(workerCountField);
+        workersPanel.add(workerCountSpinner);
+        workersPanel.add(new JLabel("Live threads:"));
+        workersPanel.add(liveWorkersLabel);
 
         JPanel dealersPanel = new JPanel();
         dealersPanel.setLayout(new BoxLayout(dealersPanel, BoxLayout.X_AXIS));
@@ -160,6 +187,12 @@ public class FactoryView extends JFrame {
 
         dealersPanel.add(queuePanel);
 
+        leadTimeLabel = new JLabel("-");
+        JPanel leadTimePanel = new JPanel(new GridLayout(1, 2));
+        leadTimePanel.add(new JLabel("Lead time p50/p99/p99.9 ms:"));
+        leadTimePanel.add(leadTimeLabel);
+        dealersPanel.add(leadTimePanel);
+
         dealersPanel.add(new JLabel("Dealer Speed (ms):"));
         dealersPanel.add(dealerSpeedSlider);
 
@@ -177,22 +210,39 @@ public class FactoryView extends JFrame {
         serializationPanel.add(serializeButton);
         serializationPanel.add(deserializeButton);
 
-        serializeButton.addActionListener(e -> serializeToFile("factory_gui.ser"));
-        deserializeButton.addActionListener(e -> deserializeFromFile("factory_gui.ser"));
+        JButton dumpButton = new JButton("Dump lead times");
+        serializationPanel.add(dumpButton);
+        dumpButton.addActionListener(e -> dumpLeadTimes());
+
+        serializeButton.addActionListener(e -> {
+            if (checkpoint != null) saveCheckpoint();
+            else serializeToFile("factory_gui.ser");
+        });
+        deserializeButton.addActionListener(e -> {
+            if (checkpoint != null) restoreCheckpoint();
+            else deserializeFromFile("factory_gui.ser");
+        });
 
-        add(serializationPanel, BorderLayout.CENTER);
+        throughputChart = new ThroughputChart(240);
+        JPanel centerPanel = new JPanel(new BorderLayout());
+        centerPanel.add(throughputChart, BorderLayout.CENTER);
+        centerPanel.add(serializationPanel, BorderLayout.SOUTH);
+        add(centerPanel, BorderLayout.CENTER);
 
 
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                monitor.close();
                 factoryController.stop();
                 System.out.println("Exiting...");
                 System.exit(0);
             }
         });
 
-        new Timer(500, e -> updateLabels()).start();
+        monitor = new FactoryMonitor(bodyStorage, motorStorage, accessoryStorage, carStorage, bodySupplier, motorSupplier,
+                accessorySupplier, dealers, threadPool, factoryController, this::updateLabels);
+        monitor.start(FactoryMonitor.DEFAULT_INTERVAL);
     }
 
     private JSlider createSlider(int initialValue) {
@@ -217,24 +267,79 @@ public class FactoryView extends JFrame {
         return field;
     }
 
-    private void updateLabels() {
-        bodyCountLabel.setText(String.valueOf(bodyStorage.getSize()));
-        motorCountLabel.setText(String.valueOf(motorStorage.getSize()));
-        accessoryCountLabel.setText(String.valueOf(accessoryStorage.getSize()));
-        carCountLabel.setText(String.valueOf(carStorage.getSize()));
+    private void updateLabels(FactorySnapshot snapshot) {
+        bodyCountLabel.setText(String.valueOf(snapshot.bodies));
+        motorCountLabel.setText(String.valueOf(snapshot.motors));
+        accessoryCountLabel.setText(String.valueOf(snapshot.accessories));
+        carCountLabel.setText(String.valueOf(snapshot.cars));
+
+        soldCarsLabel.setText(String.valueOf(snapshot.carsSold));
+        queueSizeLabel.setText(String.valueOf(snapshot.queuedTasks));
+        liveWorkersLabel.setText(String.valueOf(snapshot.liveThreads));
+
+        bodySuppliedLabel.setText("Supplied: " + snapshot.bodiesSupplied);
+        motorSuppliedLabel.setText("Supplied: " + snapshot.motorsSupplied);
+        accessorySuppliedLabel.setText("Supplied: " + snapshot.accessoriesSupplied);
+        // The effective delay is the slider's unless the supply controller slowed the supplier down.
+        for (int i = 0; i < supplierRateLabels.length; i++)
+            supplierRateLabels[i].setText(String.format("Rate: %.1f/s (%d ms)", snapshot.supplierRates[i],
+                    snapshot.supplierDelays[i]));
+
+        if (snapshot.dwellMicros != null) {
+            for (int i = 0; i < dwellLabels.length; i++)
+                dwellLabels[i].setText(formatPercentiles(snapshot.dwellMicros[i]));
+            leadTimeLabel.setText(formatPercentiles(snapshot.leadTimeMicros));
+        }
 
-        int totalSoldCars = dealers.stream().mapToInt(Dealer::getSoldCarsCount).sum();
-        soldCarsLabel.setText(String.valueOf(totalSoldCars));
-        queueSizeLabel.setText(String.valueOf(threadPool.getQueueSize()));
+        throughputChart.add(snapshot);
+    }
 
-        bodySuppliedLabel.setText("Supplied: " + bodySupplier.getSuppliedCount());
-        motorSuppliedLabel.setText("Supplied: " + motorSupplier.getSuppliedCount());
-        accessorySuppliedLabel.setText("Supplied: " + accessorySupplier.getSuppliedCount());
+    private static String formatPercentiles(double[] micros) {
+        return String.format("%.0f/%.0f/%.0f", micros[0] / 1000, micros[1] / 1000, micros[2] / 1000);
+    }
+
+    /** Shows dwell and lead-time percentiles in the storage and dealer panels. */
+    public void setLeadTimes(LeadTimeMetrics leadTimes) {
+        this.leadTimes = leadTimes;
+        monitor.setLeadTimes(leadTimes);
+    }
+
+    public void dumpLeadTimes() {
+        if (leadTimes == null)
+            System.out.println("Lead-time tracing is off");
+        else
+            System.out.print(leadTimes.dump());
+    }
+
+    /** Makes the serialization buttons use the binary factory checkpoint instead of serializing the view. */
+    public void setCheckpoint(FactoryCheckpoint checkpoint) {this.checkpoint = checkpoint; }
+
+    public void saveCheckpoint() {
+        try {
+            checkpoint.save();
+            System.out.println("Checkpoint saved to " + checkpoint.getFile());
+        } catch (IOException e) {
+            System.err.println("Checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    public void restoreCheckpoint() {
+        try {
+            checkpoint.restore();
+            System.out.println("Checkpoint restored from " + checkpoint.getFile());
+        } catch (IOException | FactoryException e) {
+            System.err.println("Checkpoint restore failed: " + e.getMessage());
+        }
     }
 
     public void serializeToFile(String filePath) {
         try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filePath))) {
-            out.writeObject(this);
+            // Written with the storages frozen, so no item is taken, recycled and reused while it is being written.
+            StorageGate gate = bodyStorage.getGate();
+            if (gate != null)
+                gate.frozen(() -> out.writeObject(this));
+            else
+                out.writeObject(this);
             System.out.println("GUI serialized successfully!");
         } catch (IOException e) {
             System.err.println("Serialization failed: " + e.getMessage());
@@ -275,25 +380,30 @@ public class FactoryView extends JFrame {
     }
 
     public void stopSuppliers() {
-        if (bodySupplierThread != null && bodySupplierThread.isAlive()) {
-            bodySupplierThread.interrupt();
-        }
-        if (motorSupplierThread != null && motorSupplierThread.isAlive()) {
-            motorSupplierThread.interrupt();
-        }
-        if (accessorySupplierThread != null && accessorySupplierThread.isAlive()) {
-            accessorySupplierThread.interrupt();
-        }
+        stopThreads(bodySupplierThreads);
+        stopThreads(motorSupplierThreads);
+        stopThreads(accessorySupplierThreads);
     }
     public void recreateSupplierThreads() {
         stopSuppliers();
 
-        bodySupplierThread = new Thread(bodySupplier);
-        motorSupplierThread = new Thread(motorSupplier);
-        accessorySupplierThread = new Thread(accessorySupplier);
+        restartThreads(bodySupplierThreads, bodySupplier);
+        restartThreads(motorSupplierThreads, motorSupplier);
+        restartThreads(accessorySupplierThreads, accessorySupplier);
+    }
 
-        bodySupplierThread.start();
-        motorSupplierThread.start();
-        accessorySupplierThread.start();
+    private static void stopThreads(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread != null && thread.isAlive()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static void restartThreads(List<Thread> threads, Runnable supplier) {
+        for (int i = 0; i < threads.size(); i++) {
+            threads.set(i, new Thread(supplier));
+            threads.get(i).start();
+        }
     }
 }
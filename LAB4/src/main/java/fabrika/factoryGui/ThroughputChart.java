@@ -0,0 +1,78 @@
+package fabrika.factoryGui;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Rolling line chart of parts supplied, cars built and cars sold per second.
+ * Points live in fixed ring arrays and painting reuses the same coordinate arrays, so repaints allocate nothing.
+ * Only used on the EDT.
+ */
+public class ThroughputChart extends JComponent {
+    private static final Color[] COLORS = {new Color(0x1f77b4), new Color(0x2ca02c), new Color(0xd62728)};
+    private static final String[] NAMES = {"Parts supplied/s", "Cars built/s", "Cars sold/s"};
+    private static final int MARGIN = 4;
+    private static final int LEGEND_HEIGHT = 14;
+
+    private final double[][] series;
+    private final int[] xs;
+    private final int[] ys;
+    private int next;
+    private int count;
+
+    public ThroughputChart(int points) {
+        series = new double[NAMES.length][points];
+        xs = new int[points];
+        ys = new int[points];
+        setPreferredSize(new Dimension(points * 2, 120));
+        setBorder(BorderFactory.createTitledBorder("Throughput"));
+    }
+
+    public void add(FactorySnapshot snapshot) {
+        series[0][next] = snapshot.suppliedRate;
+        series[1][next] = snapshot.builtRate;
+        series[2][next] = snapshot.soldRate;
+        next = (next + 1) % xs.length;
+        count = Math.min(count + 1, xs.length);
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Insets insets = getInsets();
+        int left = insets.left + MARGIN;
+        int top = insets.top + LEGEND_HEIGHT;
+        int width = getWidth() - left - insets.right - MARGIN;
+        int height = getHeight() - top - insets.bottom - MARGIN;
+        if (width <= 0 || height <= 0) return;
+
+        double max = 1;
+        for (double[] values : series)
+            for (int i = 0; i < count; i++)
+                max = Math.max(max, values[i]);
+
+        g.setColor(Color.GRAY);
+        g.drawRect(left, top, width, height);
+        g.drawString(String.format("%.0f", max), left + 2, top + 12);
+
+        int legendX = left;
+        for (int s = 0; s < series.length; s++) {
+            g.setColor(COLORS[s]);
+            g.drawString(NAMES[s], legendX, insets.top + LEGEND_HEIGHT - 3);
+            legendX += g.getFontMetrics().stringWidth(NAMES[s]) + 12;
+        }
+        if (count < 2) return;
+
+        int first = (next - count + xs.length) % xs.length;
+        for (int s = 0; s < series.length; s++) {
+            for (int i = 0; i < count; i++) {
+                double value = series[s][(first + i) % xs.length];
+                xs[i] = left + (int) ((long) i * width / (xs.length - 1));
+                ys[i] = top + height - (int) (value / max * height);
+            }
+            g.setColor(COLORS[s]);
+            g.drawPolyline(xs, ys, count);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package fabrika.ids;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out unique ids in per-thread blocks, so the shared counter is touched once per block instead of once per object.
+ * Ids are increasing within a thread but only unique, not ordered, across threads.
+ * Every id handed out so far is below {@link #getNextFree()}, which is what a checkpoint stores.
+ */
+public class IdAllocator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    public static final IdAllocator PARTS = new IdAllocator(1, DEFAULT_BLOCK_SIZE);
+    public static final IdAllocator CARS = new IdAllocator(0, DEFAULT_BLOCK_SIZE);
+
+    private final AtomicInteger nextFree;
+    private final int blockSize;
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+    // Bumped by restore so that threads drop blocks taken before it.
+    private volatile int epoch;
+
+    public IdAllocator(int firstId, int blockSize) {
+        this.nextFree = new AtomicInteger(firstId);
+        this.blockSize = blockSize;
+    }
+
+    public int next() {
+        Block block = blocks.get();
+        if (block.next == block.end || block.epoch != epoch) {
+            block.epoch = epoch;
+            block.next = nextFree.getAndAdd(blockSize);
+            block.end = block.next + blockSize;
+        }
+        return block.next++;
+    }
+
+    public int getNextFree() {return nextFree.get(); }
+
+    /** Continues after a checkpoint: every later id is at least nextFree. Never moves back, so no id is handed out twice. */
+    public synchronized void restore(int nextFree) {
+        this.nextFree.accumulateAndGet(nextFree, Math::max);
+        epoch++;
+    }
+
+    private static final class Block {
+        int next;
+        int end;
+        int epoch;
+    }
+}
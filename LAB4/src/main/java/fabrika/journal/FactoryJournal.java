@@ -0,0 +1,263 @@
+package fabrika.journal;
+
+import fabrika.CarPart.CarParts;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.exeptions.FactoryException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of supply, assembly and sale events.
+ * Callers only enqueue a record; a writer thread group-commits them in CRC-framed batches
+ * and forces the file at most once per sync interval, so a crash loses at most that window.
+ * The journal is split into numbered segments; a checkpoint rolls to a new segment and drops the older ones.
+ */
+public class FactoryJournal implements AutoCloseable {
+    public static final String DEFAULT_DIRECTORY = "journal";
+    public static final long DEFAULT_SYNC_INTERVAL = 50;
+
+    static final byte SUPPLY = 1;
+    static final byte ASSEMBLY = 2;
+    static final byte SALE = 3;
+    static final byte CONSUME = 4;
+    static final byte WITHDRAW = 5;
+    static final int BODY = CarParts.BODY;
+    static final int MOTOR = CarParts.MOTOR;
+    static final int ACCESSORY = CarParts.ACCESSORY;
+    static final int RECORD_BYTES = 1 + 5 * Integer.BYTES;
+    static final int BATCH_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Path directory;
+    private final long syncIntervalNanos;
+    private final ConcurrentLinkedQueue<JournalRecord> queue = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private Thread writer;
+    private FileChannel channel;
+    private long segment;
+    private long lastSync;
+    private boolean dirty;
+    private volatile boolean running;
+
+    public FactoryJournal(String directory, long syncIntervalMillis) {
+        this.directory = Paths.get(directory);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+    }
+
+    public Path getDirectory() {return directory; }
+    public synchronized long getSegment() {return segment; }
+
+    /** Starts a fresh segment after the existing ones, which are kept for replay until the next checkpoint. */
+    public synchronized void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Long> existing = segments(directory, 0);
+            segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+            channel = openSegment(segment);
+        } catch (IOException e) {
+            throw new FactoryException("Error opening journal: " + e.getMessage());
+        }
+
+        running = true;
+        lastSync = System.nanoTime();
+        writer = new Thread(this::writeLoop, "factory-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void supplied(CarParts part, int suppliedCount) {supplied(part, part.getId(), suppliedCount); }
+
+    /** For a part that is already stored and may have been renewed since; partId is the id it was stored with. */
+    public void supplied(CarParts part, int partId, int suppliedCount) {
+        queue.offer(new JournalRecord(SUPPLY, CarParts.kindOf(part), partId, suppliedCount, 0, 0));
+    }
+
+    /** Cancels the supply record of a part that never reached its storage. */
+    public void withdrawn(CarParts part) {
+        queue.offer(new JournalRecord(WITHDRAW, CarParts.kindOf(part), part.getId(), 0, 0, 0));
+    }
+
+    /**
+     * Extra parts of a variant are recorded as consumed by the car, ahead of its assembly record,
+     * which carries the variant so that replay rebuilds the car with its extras.
+     */
+    public void assembled(CarModel car) {
+        for (CarParts part : car.getExtraParts())
+            queue.offer(new JournalRecord(CONSUME, CarParts.kindOf(part), part.getId(), car.getId(), 0, 0));
+        queue.offer(new JournalRecord(ASSEMBLY, car.getId(), car.getEngine().getId(), car.getBody().getId(),
+                car.getAccessory().getId(), CarVariant.storedIndex(car.getVariant())));
+    }
+
+    public void sold(int dealerId, CarModel car, int soldCount) {
+        queue.offer(new JournalRecord(SALE, dealerId, car.getId(), soldCount, 0, 0));
+    }
+
+    /** Closes the current segment and returns the number of the new one; replay after a checkpoint starts there. */
+    public synchronized long roll() throws IOException {
+        channel.force(false);
+        channel.close();
+        segment++;
+        channel = openSegment(segment);
+        return segment;
+    }
+
+    /** Deletes the segments a checkpoint no longer needs. */
+    public void compact(long firstNeeded) throws IOException {
+        for (long old : segments(directory, 0))
+            if (old < firstNeeded)
+                Files.deleteIfExists(segmentPath(directory, old));
+    }
+
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running) {
+                if (!drain())
+                    LockSupport.parkNanos(this, IDLE_PARK);
+                syncIfDue(false);
+            }
+            drain();
+            syncIfDue(true);
+            synchronized (this) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to journal: " + e.getMessage());
+        }
+    }
+
+    private boolean drain() throws IOException {
+        boolean wrote = false;
+        JournalRecord record = queue.poll();
+        while (record != null) {
+            buffer.clear();
+            buffer.position(BATCH_HEADER_BYTES);
+            int count = 0;
+            while (record != null && buffer.remaining() >= RECORD_BYTES) {
+                record.writeTo(buffer);
+                count++;
+                record = queue.poll();
+            }
+            writeBatch(count);
+            wrote = true;
+        }
+        return wrote;
+    }
+
+    private void writeBatch(int count) throws IOException {
+        buffer.flip();
+        ByteBuffer records = buffer.duplicate();
+        records.position(BATCH_HEADER_BYTES);
+        crc.reset();
+        crc.update(records);
+        buffer.putInt(0, count);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+
+        synchronized (this) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            dirty = true;
+        }
+    }
+
+    private void syncIfDue(boolean force) throws IOException {
+        long now = System.nanoTime();
+        if (!force && now - lastSync < syncIntervalNanos) return;
+        synchronized (this) {
+            if (dirty) {
+                channel.force(false);
+                dirty = false;
+            }
+        }
+        lastSync = now;
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(PREFIX + number + SUFFIX);
+    }
+
+    /** Numbers of the existing segments from firstSegment on, oldest first. */
+    static List<Long> segments(Path directory, long firstSegment) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return numbers;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    long number = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    if (number >= firstSegment) numbers.add(number);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    static final class JournalRecord {
+        final byte type;
+        final int a;
+        final int b;
+        final int c;
+        final int d;
+        final int e;
+
+        JournalRecord(byte type, int a, int b, int c, int d, int e) {
+            this.type = type;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+        }
+
+        void writeTo(ByteBuffer target) {
+            target.put(type);
+            target.putInt(a);
+            target.putInt(b);
+            target.putInt(c);
+            target.putInt(d);
+            target.putInt(e);
+        }
+
+        static JournalRecord readFrom(ByteBuffer source) {
+            return new JournalRecord(source.get(), source.getInt(), source.getInt(), source.getInt(), source.getInt(),
+                    source.getInt());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package fabrika.journal;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.dealer.Dealer;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Applies journal segments on top of the restored checkpoint before the factory starts.
+ * The checkpoint is taken while production runs, so some journaled events may already be in it and
+ * records of one part or car may be out of order; every event is therefore applied by id and only once.
+ */
+public class JournalReplay {
+    private final CarFactory factory;
+    private final Map<Integer, BodyPart> bodies;
+    private final Map<Integer, Engine> engines;
+    private final Map<Integer, Accessory> accessories;
+    private final Map<Integer, CarModel> cars;
+    private final Set<Integer> usedParts = new HashSet<>();
+    private final Set<Integer> soldCars = new HashSet<>();
+    // Extra parts of variant cars by car id, journaled ahead of the car's assembly record.
+    private final Map<Integer, List<CarParts>> extraParts = new HashMap<>();
+    private final List<CarVariant> variants;
+    private int lastPartId = CarParts.getLastId();
+    private int nextCarId = CarModel.getNextId();
+    private long appliedEvents;
+
+    public JournalReplay(CarFactory factory) {
+        this.factory = factory;
+        this.variants = factory.getVariants();
+        this.bodies = index(factory.getBodyStorage());
+        this.engines = index(factory.getMotorStorage());
+        this.accessories = index(factory.getAccessoryStorage());
+        this.cars = new LinkedHashMap<>();
+        for (CarModel car : factory.getCarStorage().getItems())
+            cars.put(car.getId(), car);
+    }
+
+    public long getAppliedEvents() {return appliedEvents; }
+
+    /** Replays every segment from firstSegment on and puts the result into the storages. */
+    public long replay(Path directory, long firstSegment) throws IOException {
+        for (long segment : FactoryJournal.segments(directory, firstSegment))
+            replaySegment(FactoryJournal.segmentPath(directory, segment));
+
+        factory.getBodyStorage().setItems(new LinkedList<>(bodies.values()));
+        factory.getMotorStorage().setItems(new LinkedList<>(engines.values()));
+        factory.getAccessoryStorage().setItems(new LinkedList<>(accessories.values()));
+        factory.getCarStorage().setItems(new LinkedList<>(cars.values()));
+        CarParts.setLastId(lastPartId);
+        CarModel.setNextId(nextCarId);
+        return appliedEvents;
+    }
+
+    private void replaySegment(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) { }
+        }
+        in.flip();
+
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= FactoryJournal.BATCH_HEADER_BYTES) {
+            int count = in.getInt();
+            int checksum = in.getInt();
+            int bytes = count * FactoryJournal.RECORD_BYTES;
+            if (count <= 0 || bytes > in.remaining())
+                break;
+
+            ByteBuffer records = in.slice();
+            records.limit(bytes);
+            crc.reset();
+            crc.update(records.duplicate());
+            // A torn batch can only be the last one written before a crash.
+            if ((int) crc.getValue() != checksum)
+                break;
+
+            for (int i = 0; i < count; i++)
+                apply(FactoryJournal.JournalRecord.readFrom(records));
+            in.position(in.position() + bytes);
+        }
+    }
+
+    private void apply(FactoryJournal.JournalRecord record) {
+        switch (record.type) {
+            case FactoryJournal.SUPPLY:
+                supplied(record.a, record.b, record.c);
+                break;
+            case FactoryJournal.ASSEMBLY:
+                assembled(record.a, record.b, record.c, record.d, record.e);
+                break;
+            case FactoryJournal.SALE:
+                sold(record.a, record.b, record.c);
+                break;
+            case FactoryJournal.CONSUME:
+                consumed(record.a, record.b);
+                extraParts.computeIfAbsent(record.c, id -> new ArrayList<>()).add(CarParts.ofKind(record.a, record.b));
+                break;
+            // A withdrawn part never reached its storage; like a consumed one, it must not come back.
+            case FactoryJournal.WITHDRAW:
+                consumed(record.a, record.b);
+                break;
+            default:
+                return;
+        }
+        appliedEvents++;
+    }
+
+    private void supplied(int kind, int partId, int suppliedCount) {
+        lastPartId = Math.max(lastPartId, partId);
+        if (kind == FactoryJournal.BODY) {
+            restoreCount(factory.getBodySupplier(), suppliedCount);
+            if (!usedParts.contains(partId)) bodies.putIfAbsent(partId, new BodyPart(partId));
+        } else if (kind == FactoryJournal.MOTOR) {
+            restoreCount(factory.getMotorSupplier(), suppliedCount);
+            if (!usedParts.contains(partId)) engines.putIfAbsent(partId, new Engine(partId));
+        } else {
+            restoreCount(factory.getAccessorySupplier(), suppliedCount);
+            if (!usedParts.contains(partId)) accessories.putIfAbsent(partId, new Accessory(partId));
+        }
+    }
+
+    private void assembled(int carId, int engineId, int bodyId, int accessoryId, int variantIndex) {
+        nextCarId = Math.max(nextCarId, carId + 1);
+        usedParts.add(engineId);
+        usedParts.add(bodyId);
+        usedParts.add(accessoryId);
+        engines.remove(engineId);
+        bodies.remove(bodyId);
+        accessories.remove(accessoryId);
+        List<CarParts> extras = extraParts.remove(carId);
+        if (soldCars.contains(carId) || cars.containsKey(carId)) return;
+        CarParts[] extraArray = extras == null ? new CarParts[0] : extras.toArray(new CarParts[0]);
+        cars.put(carId, new CarModel(carId, CarVariant.restore(variants, variantIndex, extraArray),
+                new Engine(engineId), new BodyPart(bodyId), new Accessory(accessoryId), extraArray));
+    }
+
+    private void consumed(int kind, int partId) {
+        usedParts.add(partId);
+        if (kind == FactoryJournal.BODY) bodies.remove(partId);
+        else if (kind == FactoryJournal.MOTOR) engines.remove(partId);
+        else accessories.remove(partId);
+    }
+
+    private void sold(int dealerId, int carId, int soldCount) {
+        soldCars.add(carId);
+        cars.remove(carId);
+        List<Dealer> dealers = factory.getDealers();
+        if (dealerId >= 1 && dealerId <= dealers.size()) {
+            Dealer dealer = dealers.get(dealerId - 1);
+            dealer.setSoldCarsCount(Math.max(dealer.getSoldCarsCount(), soldCount));
+        }
+    }
+
+    private static void restoreCount(Supplier<?> supplier, int suppliedCount) {
+        supplier.setSuppliedCount(Math.max(supplier.getSuppliedCount(), suppliedCount));
+    }
+
+    private static <T extends CarParts> Map<Integer, T> index(Storage<T> storage) {
+        Map<Integer, T> items = new LinkedHashMap<>();
+        for (T item : storage.getItems())
+            items.put(item.getId(), item);
+        return items;
+    }
+}
@@ -0,0 +1,108 @@
+package fabrika.metrics;
+
+import fabrika.CarFactory;
+import fabrika.dealer.Dealer;
+import fabrika.exeptions.FactoryException;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class FactoryMetrics {
+    private static final String DOMAIN = "fabrika";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private final List<RateMeter> meters = new ArrayList<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "metrics-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static FactoryMetrics install(CarFactory factory) {
+        FactoryMetrics metrics = new FactoryMetrics();
+        metrics.registerStorage("Body", factory.getBodyStorage());
+        metrics.registerStorage("Motor", factory.getMotorStorage());
+        metrics.registerStorage("Accessory", factory.getAccessoryStorage());
+        metrics.registerStorage("Car", factory.getCarStorage());
+
+        ThreadPoolMetrics poolMetrics = new ThreadPoolMetrics(factory.getThreadPool());
+        factory.getThreadPool().setMetrics(poolMetrics);
+        Collections.addAll(metrics.meters, poolMetrics.meters());
+        metrics.register("type=ThreadPool", poolMetrics);
+
+        metrics.registerSupplier("Body", factory.getBodySupplier());
+        metrics.registerSupplier("Motor", factory.getMotorSupplier());
+        metrics.registerSupplier("Accessory", factory.getAccessorySupplier());
+        for (Dealer dealer : factory.getDealers())
+            metrics.registerDealer(dealer);
+        if (factory.getOrderBook() != null) {
+            OrderMetrics orderMetrics = new OrderMetrics(factory.getOrderBook());
+            metrics.meters.add(orderMetrics.meter());
+            metrics.register("type=Orders", orderMetrics);
+        }
+        if (factory.getSaleLog() != null)
+            metrics.register("type=SaleLog", new SaleLogMetrics(factory.getSaleLog()));
+
+        metrics.sampler.scheduleAtFixedRate(metrics::sample, 1, 1, TimeUnit.SECONDS);
+        return metrics;
+    }
+
+    public void close() {
+        sampler.shutdownNow();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Error unregistering " + name + ": " + e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+
+    private void registerStorage(String name, Storage<?> storage) {
+        StorageMetrics storageMetrics = new StorageMetrics(storage);
+        storage.setMetrics(storageMetrics);
+        Collections.addAll(meters, storageMetrics.meters());
+        register("type=Storage,name=" + name, storageMetrics);
+    }
+
+    private void registerSupplier(String name, Supplier<?> supplier) {
+        ThroughputMetrics supplierMetrics = new ThroughputMetrics(supplier::getSuppliedCount, supplier::getDelay);
+        meters.add(supplierMetrics.meter());
+        register("type=Supplier,name=" + name, supplierMetrics);
+    }
+
+    private void registerDealer(Dealer dealer) {
+        ThroughputMetrics dealerMetrics = new ThroughputMetrics(dealer::getSoldCarsCount, dealer::getDelay);
+        meters.add(dealerMetrics.meter());
+        register("type=Dealer,name=" + dealer.getDealerId(), dealerMetrics);
+    }
+
+    private void register(String properties, Object mbean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(mbean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            throw new FactoryException("Error registering metrics " + properties + ": " + e.getMessage());
+        }
+    }
+
+    private void sample() {
+        for (RateMeter meter : meters)
+            meter.sample();
+    }
+}
@@ -0,0 +1,87 @@
+package fabrika.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond durations: every power of two is split into 8 buckets, so a percentile
+ * is off by at most 12.5%. Recording only bumps striped counters and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[bucketOf(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets)
+            count += bucket.sum();
+        return count;
+    }
+
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    public double getMaxMicros() {return maxNanos.get() / 1000.0; }
+
+    /** Upper bound of the bucket holding the given percentile, in microseconds. */
+    public double getPercentileMicros(double percentile) {
+        double[] result = new double[1];
+        getPercentilesMicros(new double[]{percentile}, result);
+        return result[0];
+    }
+
+    /** Fills result with the given ascending percentiles, reading the buckets once. */
+    public void getPercentilesMicros(double[] percentiles, double[] result) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+
+        int bucket = 0;
+        long seen = 0;
+        for (int p = 0; p < percentiles.length; p++) {
+            if (total == 0) {
+                result[p] = 0;
+                continue;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percentiles[p] / 100.0));
+            while (bucket < BUCKETS - 1 && seen + counts[bucket] < rank)
+                seen += counts[bucket++];
+            result[p] = Math.min(upperBound(bucket), max) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package fabrika.metrics;
+
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+
+/**
+ * Where a car's time goes: how long each kind of item dwells in its storage and the total lead time
+ * from the oldest part being supplied to the car being sold.
+ * Dwell starts when the producer hands the item over, so time blocked on a full storage counts too.
+ */
+public class LeadTimeMetrics {
+    public static final String[] STORAGES = {"Bodies", "Motors", "Accessories", "Cars"};
+    public static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private static final int BODIES = 0;
+    private static final int MOTORS = 1;
+    private static final int ACCESSORIES = 2;
+    private static final int CARS = 3;
+
+    private final LatencyHistogram[] dwell = new LatencyHistogram[STORAGES.length];
+    private final LatencyHistogram leadTime = new LatencyHistogram();
+
+    public LeadTimeMetrics() {
+        for (int i = 0; i < dwell.length; i++)
+            dwell[i] = new LatencyHistogram();
+    }
+
+    public void partTaken(CarParts part, long nowNanos) {
+        long produced = part.getProducedNanos();
+        if (produced == 0) return;
+        int storage = part instanceof BodyPart ? BODIES : part instanceof Engine ? MOTORS : ACCESSORIES;
+        dwell[storage].record(nowNanos - produced);
+    }
+
+    public void carSold(CarModel car, long nowNanos) {
+        if (car.getAssembledNanos() != 0)
+            dwell[CARS].record(nowNanos - car.getAssembledNanos());
+        if (car.getFirstPartNanos() != 0)
+            leadTime.record(nowNanos - car.getFirstPartNanos());
+    }
+
+    /** Dwell percentiles of one storage (index into STORAGES) in microseconds, in the order of PERCENTILES. */
+    public double[] getDwellMicros(int storage) {
+        double[] result = new double[PERCENTILES.length];
+        dwell[storage].getPercentilesMicros(PERCENTILES, result);
+        return result;
+    }
+
+    public double[] getLeadTimeMicros() {
+        double[] result = new double[PERCENTILES.length];
+        leadTime.getPercentilesMicros(PERCENTILES, result);
+        return result;
+    }
+
+    public String dump() {
+        StringBuilder out = new StringBuilder(String.format("%-18s %10s %10s %10s %10s %10s%n",
+                "ms", "count", "p50", "p99", "p99.9", "max"));
+        for (int i = 0; i < STORAGES.length; i++)
+            appendRow(out, STORAGES[i] + " dwell", dwell[i]);
+        appendRow(out, "Lead time", leadTime);
+        return out.toString();
+    }
+
+    private static void appendRow(StringBuilder out, String name, LatencyHistogram histogram) {
+        double[] values = new double[PERCENTILES.length];
+        histogram.getPercentilesMicros(PERCENTILES, values);
+        out.append(String.format("%-18s %10d %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                values[0] / 1000, values[1] / 1000, values[2] / 1000, histogram.getMaxMicros() / 1000));
+    }
+}
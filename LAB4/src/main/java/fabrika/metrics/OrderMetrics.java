@@ -0,0 +1,28 @@
+package fabrika.metrics;
+
+import fabrika.dealer.OrderBook;
+
+public class OrderMetrics implements OrderMetricsMXBean {
+    private final OrderBook orderBook;
+    private final LatencyHistogram latency;
+    private final RateMeter fillRate;
+
+    public OrderMetrics(OrderBook orderBook) {
+        this.orderBook = orderBook;
+        this.latency = orderBook.getLatency();
+        this.fillRate = new RateMeter(orderBook::getFilledOrders);
+    }
+
+    RateMeter meter() {return fillRate; }
+
+    @Override public int getOpenOrders() {return orderBook.getOpenOrders(); }
+    @Override public long getPlacedOrders() {return orderBook.getPlacedOrders(); }
+    @Override public long getFilledOrders() {return orderBook.getFilledOrders(); }
+    @Override public long getLateOrders() {return orderBook.getLateOrders(); }
+    @Override public double getFillRate() {return fillRate.getRatePerSecond(); }
+    @Override public double getLatencyMeanMicros() {return latency.getMeanMicros(); }
+    @Override public double getLatencyP50Micros() {return latency.getPercentileMicros(50); }
+    @Override public double getLatencyP90Micros() {return latency.getPercentileMicros(90); }
+    @Override public double getLatencyP99Micros() {return latency.getPercentileMicros(99); }
+    @Override public double getLatencyMaxMicros() {return latency.getMaxMicros(); }
+}
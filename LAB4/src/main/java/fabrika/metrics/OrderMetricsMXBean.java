@@ -0,0 +1,14 @@
+package fabrika.metrics;
+
+public interface OrderMetricsMXBean {
+    int getOpenOrders();
+    long getPlacedOrders();
+    long getFilledOrders();
+    long getLateOrders();
+    double getFillRate();
+    double getLatencyMeanMicros();
+    double getLatencyP50Micros();
+    double getLatencyP90Micros();
+    double getLatencyP99Micros();
+    double getLatencyMaxMicros();
+}
@@ -0,0 +1,27 @@
+package fabrika.metrics;
+
+import java.util.function.LongSupplier;
+
+public class RateMeter {
+    private final LongSupplier count;
+    private long lastCount;
+    private long lastTime;
+    private volatile double ratePerSecond;
+
+    public RateMeter(LongSupplier count) {
+        this.count = count;
+        this.lastCount = count.getAsLong();
+        this.lastTime = System.nanoTime();
+    }
+
+    public double getRatePerSecond() {return ratePerSecond; }
+
+    void sample() {
+        long now = System.nanoTime();
+        long current = count.getAsLong();
+        if (now > lastTime)
+            ratePerSecond = (current - lastCount) * 1e9 / (now - lastTime);
+        lastCount = current;
+        lastTime = now;
+    }
+}
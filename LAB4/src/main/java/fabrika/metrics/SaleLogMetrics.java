@@ -0,0 +1,13 @@
+package fabrika.metrics;
+
+import fabrika.dealer.SaleLog;
+
+public class SaleLogMetrics implements SaleLogMetricsMXBean {
+    private final SaleLog saleLog;
+
+    public SaleLogMetrics(SaleLog saleLog) {this.saleLog = saleLog; }
+
+    @Override public long getLoggedRecords() {return saleLog.getLoggedCount(); }
+    @Override public int getPendingRecords() {return saleLog.getPendingCount(); }
+    @Override public long getDroppedRecords() {return saleLog.getDroppedCount(); }
+}
@@ -0,0 +1,7 @@
+package fabrika.metrics;
+
+public interface SaleLogMetricsMXBean {
+    long getLoggedRecords();
+    int getPendingRecords();
+    long getDroppedRecords();
+}
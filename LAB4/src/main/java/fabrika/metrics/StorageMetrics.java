@@ -0,0 +1,50 @@
+package fabrika.metrics;
+
+import fabrika.storage.Storage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class StorageMetrics implements StorageMetricsMXBean {
+    private final Storage<?> storage;
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder takes = new LongAdder();
+    private final LatencyHistogram producerWait = new LatencyHistogram();
+    private final LatencyHistogram consumerWait = new LatencyHistogram();
+    private final RateMeter putRate = new RateMeter(puts::sum);
+    private final RateMeter takeRate = new RateMeter(takes::sum);
+
+    public StorageMetrics(Storage<?> storage) {this.storage = storage; }
+
+    public void recordPut(int count, long waitNanos) {
+        puts.add(count);
+        if (waitNanos > 0) producerWait.record(waitNanos);
+    }
+
+    public void recordTake(int count, long waitNanos) {
+        takes.add(count);
+        if (waitNanos > 0) consumerWait.record(waitNanos);
+    }
+
+    RateMeter[] meters() {return new RateMeter[]{putRate, takeRate}; }
+
+    @Override public int getCapacity() {return storage.getCapacity(); }
+    @Override public int getSize() {return storage.getSize(); }
+    @Override public double getOccupancy() {return storage.getCapacity() == 0 ? 0 : (double) storage.getSize() / storage.getCapacity(); }
+    @Override public long getPutCount() {return puts.sum(); }
+    @Override public long getTakeCount() {return takes.sum(); }
+    @Override public double getPutRate() {return putRate.getRatePerSecond(); }
+    @Override public double getTakeRate() {return takeRate.getRatePerSecond(); }
+    @Override public long getProducerWaits() {return producerWait.getCount(); }
+    @Override public double getProducerWaitMeanMicros() {return producerWait.getMeanMicros(); }
+    @Override public double getProducerWaitP99Micros() {return producerWait.getPercentileMicros(99); }
+    @Override public double getProducerWaitMaxMicros() {return producerWait.getMaxMicros(); }
+    @Override public long getConsumerWaits() {return consumerWait.getCount(); }
+    @Override public double getConsumerWaitMeanMicros() {return consumerWait.getMeanMicros(); }
+    @Override public double getConsumerWaitP99Micros() {return consumerWait.getPercentileMicros(99); }
+    @Override public double getConsumerWaitMaxMicros() {return consumerWait.getMaxMicros(); }
+    @Override public String getWaitStrategy() {return storage.getWaitStrategy().getConfigName(); }
+    @Override public long getSpinWaits() {return storage.getWaitStats().getSpins(); }
+    @Override public long getYieldWaits() {return storage.getWaitStats().getYields(); }
+    @Override public long getParkWaits() {return storage.getWaitStats().getParks(); }
+    @Override public long getBlockWaits() {return storage.getWaitStats().getBlocks(); }
+}
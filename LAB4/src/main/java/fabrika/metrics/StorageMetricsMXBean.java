@@ -0,0 +1,24 @@
+package fabrika.metrics;
+
+public interface StorageMetricsMXBean {
+    int getCapacity();
+    int getSize();
+    double getOccupancy();
+    long getPutCount();
+    long getTakeCount();
+    double getPutRate();
+    double getTakeRate();
+    long getProducerWaits();
+    double getProducerWaitMeanMicros();
+    double getProducerWaitP99Micros();
+    double getProducerWaitMaxMicros();
+    long getConsumerWaits();
+    double getConsumerWaitMeanMicros();
+    double getConsumerWaitP99Micros();
+    double getConsumerWaitMaxMicros();
+    String getWaitStrategy();
+    long getSpinWaits();
+    long getYieldWaits();
+    long getParkWaits();
+    long getBlockWaits();
+}
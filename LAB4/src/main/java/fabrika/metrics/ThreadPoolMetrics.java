@@ -0,0 +1,44 @@
+package fabrika.metrics;
+
+import fabrika.workers.ThreadPool;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class ThreadPoolMetrics implements ThreadPoolMetricsMXBean {
+    private final ThreadPool threadPool;
+    private final LongAdder submitted = new LongAdder();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final RateMeter submitRate = new RateMeter(submitted::sum);
+
+    public ThreadPoolMetrics(ThreadPool threadPool) {this.threadPool = threadPool; }
+
+    public Runnable wrap(Runnable task) {
+        submitted.increment();
+        long submittedAt = System.nanoTime();
+        return () -> {
+            long startedAt = System.nanoTime();
+            queueLatency.record(startedAt - submittedAt);
+            try {
+                task.run();
+            } finally {
+                runTime.record(System.nanoTime() - startedAt);
+            }
+        };
+    }
+
+    RateMeter[] meters() {return new RateMeter[]{submitRate}; }
+
+    @Override public int getWorkerCount() {return threadPool.getWorkerCount(); }
+    @Override public int getQueueSize() {return threadPool.getQueueSize(); }
+    @Override public long getSubmittedTasks() {return submitted.sum(); }
+    @Override public long getStartedTasks() {return queueLatency.getCount(); }
+    @Override public long getCompletedTasks() {return runTime.getCount(); }
+    @Override public double getSubmitRate() {return submitRate.getRatePerSecond(); }
+    @Override public double getQueueLatencyMeanMicros() {return queueLatency.getMeanMicros(); }
+    @Override public double getQueueLatencyP99Micros() {return queueLatency.getPercentileMicros(99); }
+    @Override public double getQueueLatencyMaxMicros() {return queueLatency.getMaxMicros(); }
+    @Override public double getRunTimeMeanMicros() {return runTime.getMeanMicros(); }
+    @Override public double getRunTimeP99Micros() {return runTime.getPercentileMicros(99); }
+    @Override public double getRunTimeMaxMicros() {return runTime.getMaxMicros(); }
+}
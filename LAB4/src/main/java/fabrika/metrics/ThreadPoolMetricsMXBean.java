@@ -0,0 +1,16 @@
+package fabrika.metrics;
+
+public interface ThreadPoolMetricsMXBean {
+    int getWorkerCount();
+    int getQueueSize();
+    long getSubmittedTasks();
+    long getStartedTasks();
+    long getCompletedTasks();
+    double getSubmitRate();
+    double getQueueLatencyMeanMicros();
+    double getQueueLatencyP99Micros();
+    double getQueueLatencyMaxMicros();
+    double getRunTimeMeanMicros();
+    double getRunTimeP99Micros();
+    double getRunTimeMaxMicros();
+}
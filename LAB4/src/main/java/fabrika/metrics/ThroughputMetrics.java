@@ -0,0 +1,21 @@
+package fabrika.metrics;
+
+import java.util.function.IntSupplier;
+
+public class ThroughputMetrics implements ThroughputMetricsMXBean {
+    private final IntSupplier count;
+    private final IntSupplier delay;
+    private final RateMeter rate;
+
+    public ThroughputMetrics(IntSupplier count, IntSupplier delay) {
+        this.count = count;
+        this.delay = delay;
+        this.rate = new RateMeter(count::getAsInt);
+    }
+
+    RateMeter meter() {return rate; }
+
+    @Override public long getCount() {return count.getAsInt(); }
+    @Override public double getRatePerSecond() {return rate.getRatePerSecond(); }
+    @Override public int getDelay() {return delay.getAsInt(); }
+}
@@ -0,0 +1,7 @@
+package fabrika.metrics;
+
+public interface ThroughputMetricsMXBean {
+    long getCount();
+    double getRatePerSecond();
+    int getDelay();
+}
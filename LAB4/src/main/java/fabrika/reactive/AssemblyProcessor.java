@@ -0,0 +1,155 @@
+package fabrika.reactive;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zips the body, engine and accessory streams into cars and hands each car to exactly one dealer with demand.
+ * Each part stream is buffered up to its storage capacity and finished cars up to the car storage capacity;
+ * a new part is only requested once one has been used, so a slow dealer side throttles the suppliers.
+ * All work happens in a drain loop that whichever thread signals first runs, so no thread ever blocks.
+ */
+public class AssemblyProcessor implements Flow.Publisher<CarModel> {
+    private final PartBuffer<BodyPart> bodies;
+    private final PartBuffer<Engine> engines;
+    private final PartBuffer<Accessory> accessories;
+    private final Queue<CarModel> cars = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger carCount = new AtomicInteger();
+    private final int carCapacity;
+    private final List<DealerSubscription> dealers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong assembled = new AtomicLong();
+    private int nextDealer;
+
+    public AssemblyProcessor(int bodyCapacity, int motorCapacity, int accessoryCapacity, int carCapacity) {
+        this.bodies = new PartBuffer<>(bodyCapacity);
+        this.engines = new PartBuffer<>(motorCapacity);
+        this.accessories = new PartBuffer<>(accessoryCapacity);
+        this.carCapacity = carCapacity;
+    }
+
+    public void subscribeTo(Flow.Publisher<BodyPart> bodyPublisher, Flow.Publisher<Engine> enginePublisher,
+                            Flow.Publisher<Accessory> accessoryPublisher) {
+        bodyPublisher.subscribe(bodies);
+        enginePublisher.subscribe(engines);
+        accessoryPublisher.subscribe(accessories);
+    }
+
+    public long getAssembledCount() {return assembled.get(); }
+    public int getBufferedCars() {return carCount.get(); }
+    public int getBufferedBodies() {return bodies.size.get(); }
+    public int getBufferedEngines() {return engines.size.get(); }
+    public int getBufferedAccessories() {return accessories.size.get(); }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CarModel> subscriber) {
+        DealerSubscription subscription = new DealerSubscription(subscriber);
+        dealers.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        do {
+            while (carCount.get() < carCapacity && bodies.size.get() > 0 && engines.size.get() > 0 && accessories.size.get() > 0) {
+                CarModel car = new CarModel(engines.poll(), bodies.poll(), accessories.poll());
+                cars.add(car);
+                carCount.incrementAndGet();
+                assembled.incrementAndGet();
+            }
+
+            while (carCount.get() > 0) {
+                DealerSubscription dealer = nextDealerWithDemand();
+                if (dealer == null) break;
+                dealer.demand.decrementAndGet();
+                carCount.decrementAndGet();
+                dealer.subscriber.onNext(cars.poll());
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+
+    private DealerSubscription nextDealerWithDemand() {
+        int count = dealers.size();
+        for (int i = 0; i < count; i++) {
+            DealerSubscription dealer = dealers.get((nextDealer + i) % count);
+            if (dealer.demand.get() > 0) {
+                nextDealer = (nextDealer + i + 1) % count;
+                return dealer;
+            }
+        }
+        return null;
+    }
+
+    private final class PartBuffer<T> implements Flow.Subscriber<T> {
+        private final int capacity;
+        private final Queue<T> items = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private Flow.Subscription subscription;
+
+        PartBuffer(int capacity) {this.capacity = capacity; }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(capacity);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            size.incrementAndGet();
+            drain();
+        }
+
+        T poll() {
+            T item = items.poll();
+            size.decrementAndGet();
+            subscription.request(1);
+            return item;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            System.err.println("Part stream failed: " + throwable.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private final class DealerSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super CarModel> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+
+        DealerSubscription(Flow.Subscriber<? super CarModel> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            dealers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package fabrika.reactive;
+
+import fabrika.car.CarModel;
+import fabrika.dealer.Dealer;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** Sells one car at a time and asks for the next one only after the dealer delay has passed. */
+public class DealerSubscriber implements Flow.Subscriber<CarModel> {
+    private final Dealer dealer;
+    private final ScheduledExecutorService scheduler;
+    private Flow.Subscription subscription;
+
+    public DealerSubscriber(Dealer dealer, ScheduledExecutorService scheduler) {
+        this.dealer = dealer;
+        this.scheduler = scheduler;
+    }
+
+    public Dealer getDealer() {return dealer; }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(CarModel car) {
+        dealer.sell(car);
+        scheduler.schedule(() -> subscription.request(1), dealer.getDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.err.println("Dealer " + dealer.getDealerId() + " stream failed: " + throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
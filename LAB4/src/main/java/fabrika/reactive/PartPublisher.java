@@ -0,0 +1,88 @@
+package fabrika.reactive;
+
+import fabrika.CarPart.CarParts;
+import fabrika.supplier.Supplier;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the parts of one supplier type. Every supplier delay it emits up to supplierCount parts,
+ * but never more than the subscriber has requested; without demand it stops ticking until the next request.
+ * Only one subscriber is supported, as with the single storage it replaces.
+ */
+public class PartPublisher<T extends CarParts> implements Flow.Publisher<T> {
+    private final Supplier<T> supplier;
+    private final int supplierCount;
+    private final ScheduledExecutorService scheduler;
+    private PartSubscription subscription;
+
+    public PartPublisher(Supplier<T> supplier, int supplierCount, ScheduledExecutorService scheduler) {
+        this.supplier = supplier;
+        this.supplierCount = Math.max(1, supplierCount);
+        this.scheduler = scheduler;
+    }
+
+    public Supplier<T> getSupplier() {return supplier; }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscription != null) {
+            subscriber.onSubscribe(new PartSubscription(subscriber));
+            subscriber.onError(new IllegalStateException("A part publisher supports a single subscriber"));
+            return;
+        }
+        subscription = new PartSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class PartSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean ticking = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        PartSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            if (ticking.compareAndSet(false, true))
+                scheduler.execute(this::tick);
+        }
+
+        @Override
+        public void cancel() {cancelled = true; }
+
+        private void tick() {
+            if (cancelled) return;
+
+            long wanted = Math.min(demand.get(), supplierCount);
+            if (wanted == 0) {
+                ticking.set(false);
+                // A request may have arrived between the check and the reset.
+                if (demand.get() > 0 && ticking.compareAndSet(false, true))
+                    scheduler.execute(this::tick);
+                return;
+            }
+
+            for (long i = 0; i < wanted; i++) {
+                T part = supplier.producePart();
+                supplier.markSupplied();
+                demand.decrementAndGet();
+                subscriber.onNext(part);
+            }
+            scheduler.schedule(this::tick, supplier.getEffectiveDelay(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package fabrika.reactive;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.config.FactoryConfig;
+import fabrika.dealer.Dealer;
+import fabrika.dealer.SaleLog;
+import fabrika.supplier.Supplier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The factory as a Flow pipeline: part publishers feed the assembly processor, which feeds dealer subscribers.
+ * Storage capacities from the config become buffer sizes and everything runs on ReactiveThreads scheduler threads.
+ */
+public class ReactiveFactory implements AutoCloseable {
+    private final ScheduledExecutorService scheduler;
+    private final PartPublisher<BodyPart> bodyPublisher;
+    private final PartPublisher<Engine> motorPublisher;
+    private final PartPublisher<Accessory> accessoryPublisher;
+    private final AssemblyProcessor assembly;
+    private final List<DealerSubscriber> dealers = new ArrayList<>();
+    private final SaleLog saleLog;
+
+    public ReactiveFactory(FactoryConfig config, SaleLog saleLog) {
+        this.saleLog = saleLog;
+        scheduler = Executors.newScheduledThreadPool(config.getInt("ReactiveThreads", 2), runnable -> {
+            Thread thread = new Thread(runnable, "reactive-factory");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The suppliers have no storage here; they only provide delay, part pooling and the supplied count.
+        bodyPublisher = new PartPublisher<>(new Supplier<>(null, BodyPart::new, config.getSupplierBodyDelay()),
+                config.getSupplierBodyCount(), scheduler);
+        motorPublisher = new PartPublisher<>(new Supplier<>(null, Engine::new, config.getSupplierMotorDelay()),
+                config.getSupplierMotorCount(), scheduler);
+        accessoryPublisher = new PartPublisher<>(new Supplier<>(null, Accessory::new, config.getSupplierAccessoryDelay()),
+                config.getSupplierAccessoryCount(), scheduler);
+
+        assembly = new AssemblyProcessor(config.getBodyStorageCapacity(), config.getMotorStorageCapacity(),
+                config.getAccessoryStorageCapacity(), config.getCarStorageCapacity());
+
+        for (int i = 0; i < config.getDealers(); i++)
+            dealers.add(new DealerSubscriber(new Dealer(null, i + 1, config.getDealerDelay(), saleLog, null), scheduler));
+    }
+
+    public void start() {
+        for (DealerSubscriber dealer : dealers)
+            assembly.subscribe(dealer);
+        assembly.subscribeTo(bodyPublisher, motorPublisher, accessoryPublisher);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (saleLog != null)
+            saleLog.close();
+    }
+
+    public Supplier<BodyPart> getBodySupplier() {return bodyPublisher.getSupplier(); }
+    public Supplier<Engine> getMotorSupplier() {return motorPublisher.getSupplier(); }
+    public Supplier<Accessory> getAccessorySupplier() {return accessoryPublisher.getSupplier(); }
+    public AssemblyProcessor getAssembly() {return assembly; }
+
+    public int getSoldCars() {
+        int sold = 0;
+        for (DealerSubscriber dealer : dealers)
+            sold += dealer.getDealer().getSoldCarsCount();
+        return sold;
+    }
+
+    public String report() {
+        return "Supplied bodies: " + getBodySupplier().getSuppliedCount()
+                + ", buffered parts: " + assembly.getBufferedBodies() + "/" + assembly.getBufferedEngines() + "/" + assembly.getBufferedAccessories()
+                + ", assembled: " + assembly.getAssembledCount()
+                + ", buffered cars: " + assembly.getBufferedCars()
+                + ", sold: " + getSoldCars();
+    }
+}
@@ -0,0 +1,17 @@
+package fabrika.reactive;
+
+import fabrika.config.FactoryConfig;
+
+public class ReactiveMain {
+    public static void main(String[] args) throws InterruptedException {
+        long durationSeconds = args.length > 0 ? Long.parseLong(args[0]) : 60;
+
+        try (ReactiveFactory factory = new ReactiveFactory(FactoryConfig.load(), null)) {
+            factory.start();
+            for (long elapsed = 0; elapsed < durationSeconds; elapsed++) {
+                Thread.sleep(1000);
+                System.out.println(factory.report());
+            }
+        }
+    }
+}
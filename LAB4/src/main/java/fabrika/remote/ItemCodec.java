@@ -0,0 +1,79 @@
+package fabrika.remote;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Writes storage items as plain ids: one int per part; for a car its id, engine, body and accessory ids,
+ * its variant index (-1 for the standard car), the number of extra parts and a kind and id for each.
+ */
+public interface ItemCodec<T> {
+    ItemCodec<BodyPart> BODY = part(BodyPart::new);
+    ItemCodec<Engine> MOTOR = part(Engine::new);
+    ItemCodec<Accessory> ACCESSORY = part(Accessory::new);
+    /** For a side without configured variants; variant cars it reads get stand-in variants with their actual bill. */
+    ItemCodec<CarModel> CAR = car(Collections.emptyList());
+
+    void write(DataOutput out, T item) throws IOException;
+    T read(DataInput in) throws IOException;
+
+    /** Reads cars with the given configured variants, indexed as in the factory that built them. */
+    static ItemCodec<CarModel> car(List<CarVariant> variants) {
+        return new ItemCodec<CarModel>() {
+            @Override
+            public void write(DataOutput out, CarModel car) throws IOException {
+                out.writeInt(car.getId());
+                out.writeInt(car.getEngine().getId());
+                out.writeInt(car.getBody().getId());
+                out.writeInt(car.getAccessory().getId());
+                out.writeInt(CarVariant.storedIndex(car.getVariant()));
+                out.writeInt(car.getExtraParts().length);
+                for (CarParts part : car.getExtraParts()) {
+                    out.writeInt(CarParts.kindOf(part));
+                    out.writeInt(part.getId());
+                }
+            }
+
+            @Override
+            public CarModel read(DataInput in) throws IOException {
+                int id = in.readInt();
+                Engine engine = new Engine(in.readInt());
+                BodyPart body = new BodyPart(in.readInt());
+                Accessory accessory = new Accessory(in.readInt());
+                int variantIndex = in.readInt();
+                int extraCount = in.readInt();
+                if (extraCount < 0 || extraCount > StorageProtocol.MAX_EXTRA_PARTS)
+                    throw new IOException("Bad extra part count " + extraCount);
+                CarParts[] extras = new CarParts[extraCount];
+                for (int i = 0; i < extraCount; i++)
+                    extras[i] = CarParts.ofKind(in.readInt(), in.readInt());
+                return new CarModel(id, CarVariant.restore(variants, variantIndex, extras), engine, body, accessory, extras);
+            }
+        };
+    }
+
+    static <T extends CarParts> ItemCodec<T> part(IntFunction<T> factory) {
+        return new ItemCodec<T>() {
+            @Override
+            public void write(DataOutput out, T part) throws IOException {
+                out.writeInt(part.getId());
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                return factory.apply(in.readInt());
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package fabrika.remote;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.config.FactoryConfig;
+import fabrika.dealer.Dealer;
+import fabrika.supplier.Supplier;
+import fabrika.supplier.SupplyController;
+import fabrika.supplier.SupplyPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one node of a multi-node factory:
+ * <pre>
+ *   storage [port]                   storages, controller and workers, served over TCP
+ *   suppliers host port              suppliers putting parts into the remote part storages
+ *   dealers host port [firstDealerId] dealers taking cars from the remote car storage
+ * </pre>
+ * All nodes read the usual config.txt, so several dealer nodes can be started against one storage node.
+ * A supplier or dealer node stops once its storage node goes away.
+ */
+public class RemoteNodeMain {
+    private static final int REPORT_INTERVAL = 5000;
+    private static final long STOP_TIMEOUT = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: storage [port] | suppliers host port | dealers host port [firstDealerId]");
+            return;
+        }
+
+        FactoryConfig config = FactoryConfig.load();
+        switch (args[0]) {
+            case "storage":
+                runStorage(config, args.length > 1 ? Integer.parseInt(args[1]) : StorageServer.DEFAULT_PORT);
+                break;
+            case "suppliers":
+                runSuppliers(config, args[1], Integer.parseInt(args[2]));
+                break;
+            case "dealers":
+                runDealers(config, args[1], Integer.parseInt(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 1);
+                break;
+            default:
+                System.err.println("Unknown node role: " + args[0]);
+        }
+    }
+
+    private static void runStorage(FactoryConfig config, int port) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.putAll(config.getProperties());
+        properties.setProperty("SupplierBodyCount", "0");
+        properties.setProperty("SupplierMotorCount", "0");
+        properties.setProperty("SupplierAccessoryCount", "0");
+        properties.setProperty("Dealers", "0");
+
+        CarFactory factory = new CarFactory(new FactoryConfig(properties), false);
+        factory.start();
+        StorageServer server = new StorageServer(factory, port, config.getInt("RemotePutWindow", StorageServer.DEFAULT_PUT_WINDOW));
+        System.out.println("Storage node listening on port " + server.getPort());
+
+        while (true) {
+            Thread.sleep(REPORT_INTERVAL);
+            System.out.println("Clients: " + server.getConnectionCount()
+                    + ", bodies: " + factory.getBodyStorage().getSize()
+                    + ", motors: " + factory.getMotorStorage().getSize()
+                    + ", accessories: " + factory.getAccessoryStorage().getSize()
+                    + ", cars: " + factory.getCarStorage().getSize());
+        }
+    }
+
+    /** Runs until the storage node goes away, then stops the suppliers. */
+    static void runSuppliers(FactoryConfig config, String host, int port) throws InterruptedException {
+        RemoteStorage<BodyPart> bodies = RemoteStorage.body(host, port);
+        RemoteStorage<Engine> motors = RemoteStorage.motor(host, port);
+        RemoteStorage<Accessory> accessories = RemoteStorage.accessory(host, port);
+        Supplier<BodyPart> bodySupplier = new Supplier<>(bodies, BodyPart::new, config.getSupplierBodyDelay());
+        Supplier<Engine> motorSupplier = new Supplier<>(motors, Engine::new, config.getSupplierMotorDelay());
+        Supplier<Accessory> accessorySupplier = new Supplier<>(accessories, Accessory::new, config.getSupplierAccessoryDelay());
+
+        Actors actors = new Actors();
+        actors.start(bodySupplier, config.getSupplierBodyCount());
+        actors.start(motorSupplier, config.getSupplierMotorCount());
+        actors.start(accessorySupplier, config.getSupplierAccessoryCount());
+        // The remote storages report the storage node's fill, so the suppliers adapt to the real levels there.
+        SupplyPolicy supplyPolicy = SupplyPolicy.fromConfig(config);
+        if (supplyPolicy != null) {
+            SupplyController supplyController = new SupplyController(supplyPolicy,
+                    config.getInt("SupplyControlInterval", SupplyController.DEFAULT_INTERVAL));
+            supplyController.add(bodySupplier, config.getSupplierBodyCount());
+            supplyController.add(motorSupplier, config.getSupplierMotorCount());
+            supplyController.add(accessorySupplier, config.getSupplierAccessoryCount());
+            actors.start(supplyController, 1);
+        }
+        System.out.println("Supplier node connected to " + host + ":" + port);
+
+        while (!actors.awaitFailure(REPORT_INTERVAL)) {
+            System.out.println("Supplied bodies: " + bodySupplier.getSuppliedCount()
+                    + ", motors: " + motorSupplier.getSuppliedCount()
+                    + ", accessories: " + accessorySupplier.getSuppliedCount());
+        }
+        actors.stop();
+        bodies.close();
+        motors.close();
+        accessories.close();
+        System.err.println("Supplier node stopped: " + actors.getFailure().getMessage());
+    }
+
+    /** Runs until the storage node goes away, then stops the dealers. */
+    static void runDealers(FactoryConfig config, String host, int port, int firstDealerId) throws InterruptedException {
+        RemoteStorage<CarModel> carStorage = RemoteStorage.cars(host, port,
+                config.getInt("RemotePrefetch", RemoteStorage.DEFAULT_PREFETCH), CarVariant.fromConfig(config));
+        List<Dealer> dealers = new ArrayList<>();
+        Actors actors = new Actors();
+        for (int i = 0; i < config.getDealers(); i++) {
+            Dealer dealer = new Dealer(carStorage, firstDealerId + i, config.getDealerDelay(), true, null);
+            // The storage node counts and journals a car as sold only once it hears of the sale.
+            dealer.setSaleListener((dealerId, car, soldCount) -> carStorage.sold(dealerId, car.getId(), soldCount));
+            dealers.add(dealer);
+            actors.start(dealer, 1);
+        }
+        System.out.println("Dealer node connected to " + host + ":" + port);
+
+        while (!actors.awaitFailure(REPORT_INTERVAL))
+            System.out.println("Sold cars: " + dealers.stream().mapToInt(Dealer::getSoldCarsCount).sum());
+        actors.stop();
+        carStorage.close();
+        System.err.println("Dealer node stopped: " + actors.getFailure().getMessage());
+    }
+
+    /** Actor threads of a node; the first one that fails, e.g. because its remote storage is gone, ends the node. */
+    private static final class Actors {
+        private final List<Thread> threads = new ArrayList<>();
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        void start(Runnable task, int count) {
+            for (int i = 0; i < count; i++) {
+                Thread thread = new Thread(task);
+                thread.setUncaughtExceptionHandler((t, e) -> {
+                    failure = e;
+                    failed.countDown();
+                });
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        boolean awaitFailure(long millis) throws InterruptedException {return failed.await(millis, TimeUnit.MILLISECONDS); }
+        Throwable getFailure() {return failure; }
+
+        void stop() throws InterruptedException {
+            for (Thread thread : threads)
+                thread.interrupt();
+            for (Thread thread : threads)
+                thread.join(STOP_TIMEOUT);
+        }
+    }
+}
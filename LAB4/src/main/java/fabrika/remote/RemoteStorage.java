@@ -0,0 +1,346 @@
+package fabrika.remote;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.exeptions.FactoryException;
+import fabrika.storage.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client side of a storage served by {@link StorageServer}.
+ * Puts are pipelined: they only wait for credit, and a flusher thread sends everything queued so far as one frame.
+ * Takes are served from a small prefetch buffer that is topped up by one TAKE request per consumed item.
+ * Once the connection is lost or closed, waiting and later calls fail with a FactoryException.
+ */
+public class RemoteStorage<T> extends Storage<T> implements AutoCloseable {
+    public static final int DEFAULT_PREFETCH = 4;
+    // How often a waiting call checks that the connection is still up.
+    private static final long CHECK_INTERVAL = 100;
+    private static final long CLOSE_TIMEOUT = 1000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ItemCodec<T> codec;
+    private final int remoteCapacity;
+    private final int prefetch;
+    private final Semaphore putCredits;
+    private final LinkedBlockingQueue<T> received = new LinkedBlockingQueue<>();
+    private final Object sendLock = new Object();
+    private final List<T> pendingPuts = new ArrayList<>();
+    private final List<int[]> pendingSales = new ArrayList<>();
+    private int pendingTakes;
+    private boolean takesStarted;
+    private final Thread reader;
+    private final Thread flusher;
+    private volatile int remoteSize;
+    private volatile boolean running = true;
+    private volatile String failure;
+
+    RemoteStorage(String host, int port, byte storageId, ItemCodec<T> codec, int prefetch) {
+        super(0);
+        this.codec = codec;
+        this.prefetch = prefetch;
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(StorageProtocol.MAGIC);
+            out.writeByte(StorageProtocol.VERSION);
+            out.writeByte(storageId);
+            out.flush();
+            remoteCapacity = in.readInt();
+            putCredits = new Semaphore(in.readInt());
+            remoteSize = in.readInt();
+        } catch (IOException e) {
+            throw new FactoryException("Error: Cannot connect to storage at " + host + ":" + port + ": " + e.getMessage());
+        }
+
+        reader = new Thread(this::readLoop, "remote-storage-reader");
+        reader.setDaemon(true);
+        reader.start();
+        flusher = new Thread(this::flushLoop, "remote-storage-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public static RemoteStorage<BodyPart> body(String host, int port) {
+        return new RemoteStorage<>(host, port, StorageProtocol.BODY, ItemCodec.BODY, DEFAULT_PREFETCH);
+    }
+
+    public static RemoteStorage<Engine> motor(String host, int port) {
+        return new RemoteStorage<>(host, port, StorageProtocol.MOTOR, ItemCodec.MOTOR, DEFAULT_PREFETCH);
+    }
+
+    public static RemoteStorage<Accessory> accessory(String host, int port) {
+        return new RemoteStorage<>(host, port, StorageProtocol.ACCESSORY, ItemCodec.ACCESSORY, DEFAULT_PREFETCH);
+    }
+
+    public static RemoteStorage<CarModel> cars(String host, int port, int prefetch) {
+        return cars(host, port, prefetch, Collections.emptyList());
+    }
+
+    /** variants are the configured car variants, so that cars keep theirs on this node. */
+    public static RemoteStorage<CarModel> cars(String host, int port, int prefetch, List<CarVariant> variants) {
+        return new RemoteStorage<>(host, port, StorageProtocol.CAR, ItemCodec.car(variants), prefetch);
+    }
+
+    /** Capacity of the served storage as reported when the connection was opened. */
+    @Override
+    public int getCapacity() {return remoteCapacity; }
+
+    /**
+     * Fill of the served storage as of the server's last reply, so that supply control on this node sees the real level.
+     * It is refreshed by every put and take of this client; items prefetched here count as taken.
+     */
+    @Override
+    public int getSize() {return remoteSize; }
+
+    @Override
+    public void addItem(T item) throws InterruptedException {
+        checkConnected();
+        long waitStart = putCredits.tryAcquire() ? 0 : System.nanoTime();
+        if (waitStart != 0)
+            acquireCredits(1);
+        queuePuts(item);
+        recordPut(1, waitStart);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        checkConnected();
+        if (!putCredits.tryAcquire()) return false;
+        queuePuts(item);
+        recordPut(1, 0);
+        return true;
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> batch) throws InterruptedException {
+        checkConnected();
+        long waitStart = putCredits.tryAcquire(batch.size()) ? 0 : System.nanoTime();
+        if (waitStart != 0)
+            acquireCredits(batch.size());
+        synchronized (sendLock) {
+            pendingPuts.addAll(batch);
+        }
+        LockSupport.unpark(flusher);
+        recordPut(batch.size(), waitStart);
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        startTakes();
+        T item = received.poll();
+        long waitStart = 0;
+        if (item == null) {
+            waitStart = System.nanoTime();
+            while ((item = received.poll(CHECK_INTERVAL, TimeUnit.MILLISECONDS)) == null)
+                checkConnected();
+        }
+        requestMore(1);
+        recordTake(1, waitStart);
+        return item;
+    }
+
+    @Override
+    public T poll() {
+        startTakes();
+        T item = received.poll();
+        if (item == null) {
+            checkConnected();
+            return null;
+        }
+        requestMore(1);
+        recordTake(1, 0);
+        return item;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int maxItems) throws InterruptedException {
+        target.add(take());
+        int drained = 1 + received.drainTo(target, maxItems - 1);
+        requestMore(drained - 1);
+        recordTake(drained - 1, 0);
+        return drained;
+    }
+
+    @Override
+    public void setCapacity(int newCapacity) {
+        throw new FactoryException("Error: The capacity of a remote storage is set on its server");
+    }
+
+    @Override
+    public void setItems(Queue<T> items) {
+        throw new FactoryException("Error: The items of a remote storage are restored on its server");
+    }
+
+    @Override
+    public Queue<T> getItems() {return new LinkedList<>(received); }
+
+    /** Sends what is still queued, such as sale acknowledgements, and disconnects. */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(flusher);
+        if (failure == null && Thread.currentThread() != flusher) {
+            try {
+                flusher.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Tells the server that a dealer sold a car taken from here, so it is counted and journaled as sold there.
+     * Cars taken but never acknowledged go back to the served storage when this client disconnects.
+     */
+    public void sold(int dealerId, int itemId, int soldCount) {
+        synchronized (sendLock) {
+            pendingSales.add(new int[]{itemId, dealerId, soldCount});
+        }
+        LockSupport.unpark(flusher);
+    }
+
+    private void acquireCredits(int count) throws InterruptedException {
+        while (!putCredits.tryAcquire(count, CHECK_INTERVAL, TimeUnit.MILLISECONDS))
+            checkConnected();
+    }
+
+    /** Items already received can still be taken; anything that needs the server fails. */
+    private void checkConnected() {
+        if (failure != null)
+            throw new FactoryException("Error: Remote storage connection lost: " + failure);
+        if (!running)
+            throw new FactoryException("Error: Remote storage is closed");
+    }
+
+    private void connectionLost(IOException e) {
+        if (!running) return;
+        failure = e.getMessage() != null ? e.getMessage() : e.toString();
+        System.err.println("Remote storage connection lost: " + failure);
+        close();
+    }
+
+    private void queuePuts(T item) {
+        synchronized (sendLock) {
+            pendingPuts.add(item);
+        }
+        LockSupport.unpark(flusher);
+    }
+
+    private void startTakes() {
+        synchronized (sendLock) {
+            if (takesStarted) return;
+            takesStarted = true;
+        }
+        requestMore(prefetch);
+    }
+
+    private void requestMore(int count) {
+        if (count <= 0) return;
+        synchronized (sendLock) {
+            pendingTakes += count;
+        }
+        LockSupport.unpark(flusher);
+    }
+
+    private void flushLoop() {
+        List<T> puts = new ArrayList<>();
+        List<int[]> sales = new ArrayList<>();
+        try {
+            while (true) {
+                int takes;
+                synchronized (sendLock) {
+                    int count = Math.min(pendingPuts.size(), StorageProtocol.MAX_BATCH);
+                    List<T> head = pendingPuts.subList(0, count);
+                    puts.addAll(head);
+                    head.clear();
+                    List<int[]> soldHead = pendingSales.subList(0, Math.min(pendingSales.size(), StorageProtocol.MAX_BATCH));
+                    sales.addAll(soldHead);
+                    soldHead.clear();
+                    takes = pendingTakes;
+                    pendingTakes = 0;
+                }
+                if (puts.isEmpty() && sales.isEmpty() && takes == 0) {
+                    if (!running) {
+                        synchronized (sendLock) {
+                            if (pendingPuts.isEmpty() && pendingSales.isEmpty()) break;
+                        }
+                        continue;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                if (!puts.isEmpty()) {
+                    out.writeByte(StorageProtocol.PUT);
+                    out.writeInt(puts.size());
+                    for (T item : puts)
+                        codec.write(out, item);
+                    puts.clear();
+                }
+                if (!sales.isEmpty()) {
+                    out.writeByte(StorageProtocol.SOLD);
+                    out.writeInt(sales.size());
+                    for (int[] sale : sales)
+                        for (int value : sale)
+                            out.writeInt(value);
+                    sales.clear();
+                }
+                if (takes > 0) {
+                    out.writeByte(StorageProtocol.TAKE);
+                    out.writeInt(takes);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (running) {
+                byte op = in.readByte();
+                int count = in.readInt();
+                remoteSize = in.readInt();
+                if (op == StorageProtocol.CREDIT) {
+                    putCredits.release(count);
+                } else if (op == StorageProtocol.ITEMS) {
+                    for (int i = 0; i < count; i++)
+                        received.add(codec.read(in));
+                } else {
+                    throw new IOException("Unknown reply " + op);
+                }
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fabrika.remote;
+
+/**
+ * Wire format of the remote storage protocol. All numbers are big-endian.
+ *
+ * A connection serves one storage. The client opens it with MAGIC, VERSION and a storage id;
+ * the server answers with the storage capacity, the number of items the client may put before waiting for CREDIT
+ * and the storage's fill. After that the client pipelines PUT [count, items] and TAKE [count] frames, and the server
+ * answers with CREDIT [count, fill] once put items are stored and ITEMS [count, fill, items] as requested items
+ * become available; fill is the number of items in the storage right after the move.
+ * A dealer acknowledges each car it sells with SOLD [count, (car id, dealer id, sold count)...]; cars it was sent
+ * but did not sell go back to the storage when it disconnects.
+ */
+final class StorageProtocol {
+    static final int MAGIC = 0x46524D54;
+    // Version 2 sends the variant and extra parts of a car, version 3 the storage's fill with every reply.
+    static final byte VERSION = 3;
+
+    static final byte BODY = 0;
+    static final byte MOTOR = 1;
+    static final byte ACCESSORY = 2;
+    static final byte CAR = 3;
+
+    static final byte PUT = 1;
+    static final byte TAKE = 2;
+    static final byte CREDIT = 3;
+    static final byte ITEMS = 4;
+    static final byte SOLD = 5;
+
+    static final int MAX_BATCH = 256;
+    static final int MAX_EXTRA_PARTS = 1024;
+
+    private StorageProtocol() {
+    }
+}
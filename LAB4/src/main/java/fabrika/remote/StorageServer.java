@@ -0,0 +1,366 @@
+package fabrika.remote;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.CarParts;
+import fabrika.car.CarModel;
+import fabrika.exeptions.FactoryException;
+import fabrika.journal.FactoryJournal;
+import fabrika.storage.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/** Serves the storages of a factory to remote suppliers and dealers. */
+public class StorageServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7400;
+    public static final int DEFAULT_PUT_WINDOW = 64;
+    private static final long CLOSE_TIMEOUT = 1000;
+
+    private final CarFactory factory;
+    private final int putWindow;
+    private final ServerSocket serverSocket;
+    private final List<Connection<?>> connections = new CopyOnWriteArrayList<>();
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    public StorageServer(CarFactory factory, int port, int putWindow) {
+        this.factory = factory;
+        this.putWindow = putWindow;
+        try {
+            this.serverSocket = new ServerSocket(port);
+        } catch (IOException e) {
+            throw new FactoryException("Error: Cannot listen on port " + port + ": " + e.getMessage());
+        }
+        acceptor = new Thread(this::acceptLoop, "storage-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {return serverSocket.getLocalPort(); }
+    public int getConnectionCount() {return connections.size(); }
+
+    /** Disconnects every client and waits briefly for their threads, so that what they stored or handed out is journaled. */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing storage server: " + e.getMessage());
+        }
+        List<Connection<?>> open = new ArrayList<>(connections);
+        for (Connection<?> connection : open)
+            connection.close();
+        try {
+            for (Connection<?> connection : open)
+                connection.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread(() -> serve(socket), "storage-connection-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running)
+                    System.err.println("Error accepting storage client: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != StorageProtocol.MAGIC || in.readByte() != StorageProtocol.VERSION)
+                throw new IOException("Not a storage client");
+
+            Connection<?> connection;
+            byte storageId = in.readByte();
+            FactoryJournal journal = factory.getJournal();
+            switch (storageId) {
+                case StorageProtocol.BODY:
+                    connection = parts(socket, in, out, factory.getBodyStorage(), ItemCodec.BODY);
+                    break;
+                case StorageProtocol.MOTOR:
+                    connection = parts(socket, in, out, factory.getMotorStorage(), ItemCodec.MOTOR);
+                    break;
+                case StorageProtocol.ACCESSORY:
+                    connection = parts(socket, in, out, factory.getAccessoryStorage(), ItemCodec.ACCESSORY);
+                    break;
+                case StorageProtocol.CAR:
+                    // A car counts as sold, for the production scheduler and for recovery, once the remote dealer sells it.
+                    connection = new Connection<>(socket, in, out, factory.getCarStorage(), ItemCodec.car(factory.getVariants()),
+                            null, null, new Sales<CarModel>() {
+                                @Override
+                                public int idOf(CarModel car) {return car.getId(); }
+
+                                @Override
+                                public void sold(CarModel car, int dealerId, int soldCount) {
+                                    factory.getController().notifySale();
+                                    if (journal != null)
+                                        journal.sold(dealerId, car, soldCount);
+                                }
+                            });
+                    break;
+                default:
+                    throw new IOException("Unknown storage id " + storageId);
+            }
+
+            connections.add(connection);
+            try {
+                connection.run();
+            } finally {
+                connections.remove(connection);
+                connection.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Storage client disconnected: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Part ids are only unique within the node that made them, so a remote part gets an id of this factory before
+     * it is journaled and stored; like a local supplier's part, it is withdrawn if it is then not stored.
+     */
+    private <T extends CarParts> Connection<T> parts(Socket socket, DataInputStream in, DataOutputStream out,
+                                                     Storage<T> storage, ItemCodec<T> codec) {
+        FactoryJournal journal = factory.getJournal();
+        return new Connection<>(socket, in, out, storage, codec, part -> {
+            part.renew();
+            if (journal != null)
+                journal.supplied(part, 0);
+        }, part -> {
+            if (journal != null)
+                journal.withdrawn(part);
+        }, null);
+    }
+
+    /** Settles items a client acknowledges as sold; items sent but never acknowledged go back when it disconnects. */
+    private interface Sales<T> {
+        int idOf(T item);
+        void sold(T item, int dealerId, int soldCount);
+    }
+
+    private final class Connection<T> {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Storage<T> storage;
+        private final ItemCodec<T> codec;
+        private final Consumer<T> onReceived;
+        private final Consumer<T> onRejected;
+        private final Sales<T> sales;
+        private final Map<Integer, T> unsold = new ConcurrentHashMap<>();
+        private final Object takeMonitor = new Object();
+        private int takeCredits;
+        private Thread sender;
+        private volatile Thread receiver;
+
+        Connection(Socket socket, DataInputStream in, DataOutputStream out, Storage<T> storage, ItemCodec<T> codec,
+                   Consumer<T> onReceived, Consumer<T> onRejected, Sales<T> sales) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.storage = storage;
+            this.codec = codec;
+            this.onReceived = onReceived;
+            this.onRejected = onRejected;
+            this.sales = sales;
+        }
+
+        void run() throws IOException {
+            receiver = Thread.currentThread();
+            synchronized (out) {
+                out.writeInt(storage.getCapacity());
+                out.writeInt(putWindow);
+                out.writeInt(storage.getSize());
+                out.flush();
+            }
+
+            List<T> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    byte op = in.readByte();
+                    int count = in.readInt();
+                    if (op == StorageProtocol.PUT) {
+                        for (int i = 0; i < count; i++)
+                            batch.add(codec.read(in));
+                        // Blocks while the storage is full, which holds back the client's credit.
+                        store(batch);
+                        batch.clear();
+                        synchronized (out) {
+                            out.writeByte(StorageProtocol.CREDIT);
+                            out.writeInt(count);
+                            out.writeInt(storage.getSize());
+                            out.flush();
+                        }
+                    } else if (op == StorageProtocol.TAKE) {
+                        requestItems(count);
+                    } else if (op == StorageProtocol.SOLD && sales != null) {
+                        for (int i = 0; i < count; i++)
+                            settle(in.readInt(), in.readInt(), in.readInt());
+                    } else {
+                        throw new IOException("Unknown operation " + op);
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // The client went away.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Stores item by item, so that on close exactly the items not stored are withdrawn. */
+        private void store(List<T> batch) throws InterruptedException {
+            if (onReceived != null)
+                batch.forEach(onReceived);
+            int stored = 0;
+            try {
+                for (T item : batch) {
+                    storage.addItem(item);
+                    stored++;
+                }
+            } finally {
+                if (onRejected != null)
+                    batch.subList(stored, batch.size()).forEach(onRejected);
+            }
+        }
+
+        private void settle(int id, int dealerId, int soldCount) {
+            T item = unsold.remove(id);
+            if (item != null)
+                sales.sold(item, dealerId, soldCount);
+        }
+
+        private void requestItems(int count) {
+            synchronized (takeMonitor) {
+                takeCredits += count;
+                takeMonitor.notifyAll();
+                if (sender == null) {
+                    sender = new Thread(this::sendLoop, "storage-sender-" + socket.getPort());
+                    sender.setDaemon(true);
+                    sender.start();
+                }
+            }
+        }
+
+        private void sendLoop() {
+            List<T> batch = new ArrayList<>();
+            try {
+                while (!socket.isClosed()) {
+                    int credits;
+                    synchronized (takeMonitor) {
+                        while (takeCredits == 0)
+                            takeMonitor.wait();
+                        credits = Math.min(takeCredits, StorageProtocol.MAX_BATCH);
+                    }
+
+                    int taken = storage.drainTo(batch, credits);
+                    // Tracked before they are sent, as the sale may be acknowledged before this thread gets on.
+                    if (sales != null)
+                        for (T item : batch)
+                            unsold.put(sales.idOf(item), item);
+                    boolean sent = false;
+                    try {
+                        synchronized (out) {
+                            out.writeByte(StorageProtocol.ITEMS);
+                            out.writeInt(taken);
+                            out.writeInt(storage.getSize());
+                            for (T item : batch)
+                                codec.write(out, item);
+                            out.flush();
+                        }
+                        sent = true;
+                    } finally {
+                        if (!sent) {
+                            if (sales != null)
+                                for (T item : batch)
+                                    unsold.remove(sales.idOf(item));
+                            putBack(batch);
+                        }
+                    }
+                    synchronized (takeMonitor) {
+                        takeCredits -= taken;
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                close();
+            } finally {
+                putBackUnsold();
+            }
+        }
+
+        /** Items the client held but never sold, e.g. prefetched by a dealer node that went down. */
+        private void putBackUnsold() {
+            List<T> items = new ArrayList<>();
+            for (Integer id : unsold.keySet()) {
+                T item = unsold.remove(id);
+                if (item != null) items.add(item);
+            }
+            putBack(items);
+        }
+
+        /** Items taken for a client that did not get them go back to the storage, as far as there is room. */
+        private void putBack(List<T> batch) {
+            int lost = 0;
+            for (T item : batch)
+                if (!storage.offer(item)) lost++;
+            if (lost > 0)
+                System.err.println("Storage client disconnected holding " + lost + " items; the storage is full");
+        }
+
+        void join(long millis) throws InterruptedException {
+            Thread current = receiver;
+            if (current != null)
+                current.join(millis);
+            synchronized (takeMonitor) {
+                current = sender;
+            }
+            if (current != null)
+                current.join(millis);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            // A put waiting for room stops and withdraws what it did not store.
+            Thread current = receiver;
+            if (current != null && current != Thread.currentThread())
+                current.interrupt();
+            synchronized (takeMonitor) {
+                if (sender != null)
+                    sender.interrupt();
+            }
+            putBackUnsold();
+        }
+    }
+}
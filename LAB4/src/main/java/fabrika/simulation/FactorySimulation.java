@@ -0,0 +1,193 @@
+package fabrika.simulation;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.config.FactoryConfig;
+import fabrika.controller.Controller;
+import fabrika.dealer.Dealer;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+import fabrika.workers.VariantScheduler;
+import fabrika.workers.Worker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FactorySimulation {
+    private final SimulationEngine engine = new SimulationEngine();
+    private final Storage<BodyPart> bodyStorage;
+    private final Storage<Engine> motorStorage;
+    private final Storage<Accessory> accessoryStorage;
+    private final Storage<CarModel> carStorage;
+    private final Supplier<BodyPart> bodySupplier;
+    private final Supplier<Engine> motorSupplier;
+    private final Supplier<Accessory> accessorySupplier;
+    private final List<Dealer> dealers = new ArrayList<>();
+    private final Controller controller;
+    private final int assemblyTime;
+    private final ArrayDeque<int[]> jobs = new ArrayDeque<>();
+
+    private final ArrayDeque<SimulationProcess> blockedSuppliers = new ArrayDeque<>();
+    private final ArrayDeque<SimulationProcess> blockedWorkers = new ArrayDeque<>();
+    private final ArrayDeque<SimulationProcess> blockedDealers = new ArrayDeque<>();
+
+    public FactorySimulation(FactoryConfig config) {
+        bodyStorage = new Storage<>(config.getBodyStorageCapacity());
+        motorStorage = new Storage<>(config.getMotorStorageCapacity());
+        accessoryStorage = new Storage<>(config.getAccessoryStorageCapacity());
+        carStorage = new Storage<>(config.getCarStorageCapacity());
+
+        bodySupplier = new Supplier<>(bodyStorage, BodyPart::new, config.getSupplierBodyDelay());
+        motorSupplier = new Supplier<>(motorStorage, Engine::new, config.getSupplierMotorDelay());
+        accessorySupplier = new Supplier<>(accessoryStorage, Accessory::new, config.getSupplierAccessoryDelay());
+
+        // Assembly jobs are queued here instead of being run on a ThreadPool, so the task limit cannot follow one.
+        int workers = config.getWorkers();
+        int maxTasks = config.getInt("MaxAssemblyTasks", 0);
+        controller = new Controller(carStorage, bodyStorage, motorStorage, accessoryStorage, null, config,
+                maxTasks > 0 ? maxTasks : workers);
+        List<CarVariant> variants = CarVariant.fromConfig(config);
+        CarVariant.checkCapacities(variants, config.getBodyStorageCapacity(), config.getMotorStorageCapacity(),
+                config.getAccessoryStorageCapacity());
+        if (!variants.isEmpty())
+            controller.setScheduler(new VariantScheduler(variants, bodyStorage, motorStorage, accessoryStorage,
+                    config.getInt("VariantMaxLead", VariantScheduler.DEFAULT_MAX_LEAD)));
+        // Variants carry their own assembly time; this one is for the standard car (ms).
+        assemblyTime = config.getInt("AssemblyTime", 0);
+
+        for (int i = 0; i < config.getDealers(); i++)
+            dealers.add(new Dealer(carStorage, i + 1, config.getDealerDelay(), false, controller));
+
+        engine.schedule(new SupplierProcess<>(bodySupplier), 0);
+        engine.schedule(new SupplierProcess<>(motorSupplier), 0);
+        engine.schedule(new SupplierProcess<>(accessorySupplier), 0);
+        for (Dealer dealer : dealers)
+            engine.schedule(new DealerProcess(dealer), 0);
+        for (int i = 0; i < workers; i++)
+            engine.schedule(new WorkerProcess(), 0);
+        engine.schedule(new ControllerProcess(), 0);
+    }
+
+    public void runFor(long millis) {engine.runUntil(engine.now() + millis); }
+
+    public long getTime() {return engine.now(); }
+    public long getProcessedEvents() {return engine.getProcessedEvents(); }
+    public int getQueueSize() {return jobs.size(); }
+    public int getSoldCars() {return dealers.stream().mapToInt(Dealer::getSoldCarsCount).sum(); }
+
+    public String report() {
+        long seconds = engine.now() / 1000;
+        return String.format("[%dd %02d:%02d:%02d] Stored: bodies=%d motors=%d accessories=%d cars=%d | "
+                        + "Supplied: body=%d motor=%d accessory=%d | Sold: %d | Queued tasks: %d",
+                seconds / 86400, seconds / 3600 % 24, seconds / 60 % 60, seconds % 60,
+                bodyStorage.getSize(), motorStorage.getSize(), accessoryStorage.getSize(), carStorage.getSize(),
+                bodySupplier.getSuppliedCount(), motorSupplier.getSuppliedCount(), accessorySupplier.getSuppliedCount(),
+                getSoldCars(), getQueueSize());
+    }
+
+    private void release(ArrayDeque<SimulationProcess> blocked) {
+        SimulationProcess process;
+        while ((process = blocked.poll()) != null)
+            engine.schedule(process, 0);
+    }
+
+    private static long step(int delay) {
+        // A zero delay would loop forever at the same instant, so the clock always advances by at least 1 ms.
+        return Math.max(1, delay);
+    }
+
+    private class SupplierProcess<T extends CarParts> extends SimulationProcess {
+        private final Supplier<T> supplier;
+        private T pending;
+
+        SupplierProcess(Supplier<T> supplier) {this.supplier = supplier; }
+
+        @Override
+        protected void fire() {
+            if (pending == null)
+                pending = supplier.reserve();
+
+            if (!supplier.tryDeliver(pending)) {
+                blockedSuppliers.add(this);
+                return;
+            }
+            pending = null;
+            release(blockedWorkers);
+            engine.schedule(this, step(supplier.getDelay()));
+        }
+    }
+
+    private class DealerProcess extends SimulationProcess {
+        private final Dealer dealer;
+
+        DealerProcess(Dealer dealer) {this.dealer = dealer; }
+
+        @Override
+        protected void fire() {
+            if (!dealer.trySell()) {
+                blockedDealers.add(this);
+                return;
+            }
+            release(blockedWorkers);
+            engine.schedule(this, step(dealer.getDelay()));
+        }
+    }
+
+    private class ControllerProcess extends SimulationProcess {
+        @Override
+        protected void fire() {
+            int tasks = controller.planTasks(engine.now() * 1_000_000);
+            for (int i = 0; i < tasks; i++)
+                jobs.add(new int[]{controller.getJobSize()});
+            if (tasks > 0)
+                release(blockedWorkers);
+            engine.schedule(this, step(controller.getInterval()));
+        }
+    }
+
+    /**
+     * One worker of the pool: takes a job, then for each car holds the parts for its assembly time on the
+     * virtual clock and waits for room in the car storage, so the worker count and assembly times bound throughput.
+     */
+    private class WorkerProcess extends SimulationProcess {
+        private final Worker worker = controller.createWorker();
+        private int[] job;
+        private Worker.Assembly assembly;
+        private CarModel car;
+
+        @Override
+        protected void fire() {
+            if (assembly != null) {
+                car = worker.finish(assembly);
+                assembly = null;
+            }
+            if (car != null) {
+                if (!carStorage.offer(car)) {
+                    blockedWorkers.add(this);
+                    return;
+                }
+                car = null;
+                release(blockedDealers);
+                if (--job[0] == 0) {
+                    job = null;
+                    controller.taskFinished();
+                }
+            }
+
+            if (job == null)
+                job = jobs.poll();
+            if (job == null || (assembly = worker.tryStart()) == null) {
+                blockedWorkers.add(this);
+                return;
+            }
+            release(blockedSuppliers);
+            // Unlike the suppliers a zero time cannot loop forever here: every assembly uses up parts.
+            engine.schedule(this, assembly.getVariant() == CarVariant.STANDARD ? assemblyTime : assembly.getAssemblyTime());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package fabrika.simulation;
+
+import java.util.PriorityQueue;
+
+public class SimulationEngine {
+    private final PriorityQueue<SimulationProcess> events = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+    private long processedEvents;
+
+    public long now() {return now; }
+    public long getProcessedEvents() {return processedEvents; }
+
+    public void schedule(SimulationProcess process, long delay) {
+        process.wakeTime = now + delay;
+        process.sequence = sequence++;
+        events.add(process);
+    }
+
+    public void runUntil(long time) {
+        while (!events.isEmpty() && events.peek().wakeTime <= time) {
+            SimulationProcess process = events.poll();
+            now = process.wakeTime;
+            processedEvents++;
+            process.fire();
+        }
+        now = Math.max(now, time);
+    }
+}
@@ -0,0 +1,22 @@
+package fabrika.simulation;
+
+import fabrika.config.FactoryConfig;
+
+public class SimulationMain {
+    public static void main(String[] args) {
+        long durationSeconds = args.length > 0 ? Long.parseLong(args[0]) : 3600;
+        long reportSeconds = args.length > 1 ? Long.parseLong(args[1]) : Math.max(1, durationSeconds / 10);
+
+        FactorySimulation simulation = new FactorySimulation(FactoryConfig.load());
+        long started = System.nanoTime();
+
+        for (long elapsed = 0; elapsed < durationSeconds; elapsed += reportSeconds) {
+            simulation.runFor(Math.min(reportSeconds, durationSeconds - elapsed) * 1000);
+            System.out.println(simulation.report());
+        }
+
+        long wallMillis = (System.nanoTime() - started) / 1_000_000;
+        System.out.println("Simulated " + durationSeconds + " s in " + wallMillis + " ms ("
+                + simulation.getProcessedEvents() + " events)");
+    }
+}
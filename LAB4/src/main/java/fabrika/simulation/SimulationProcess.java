@@ -0,0 +1,14 @@
+package fabrika.simulation;
+
+public abstract class SimulationProcess implements Comparable<SimulationProcess> {
+    long wakeTime;
+    long sequence;
+
+    protected abstract void fire();
+
+    @Override
+    public int compareTo(SimulationProcess other) {
+        int byTime = Long.compare(wakeTime, other.wakeTime);
+        return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+}
@@ -0,0 +1,370 @@
+package fabrika.storage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+public class RingBufferStorage<T> extends Storage<T> {
+    private static final long CLOSED = 1L << 62;
+
+    // Consumers drain the oldest ring, producers fill the newest; they differ only while a grown ring is being drained.
+    private volatile Ring<T> headRing;
+    private volatile Ring<T> tailRing;
+    private volatile int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock resizeLock = new ReentrantLock();
+    private transient ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+    private transient ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+
+    public RingBufferStorage(int capacity) {
+        super(capacity);
+        this.capacity = capacity;
+        this.tailRing = new Ring<>(capacity);
+        this.headRing = tailRing;
+    }
+
+    @Override
+    public int getCapacity() {return capacity; }
+
+    @Override
+    public int getSize() {return size.get(); }
+
+    @Override
+    public void addItem(T item) throws InterruptedException {
+        if (tryPut(item)) {
+            recordPut(1, 0);
+            return;
+        }
+
+        long waitStart = System.nanoTime();
+        if (getWaitStrategy() != WaitStrategy.BLOCK && pollUntil(() -> tryPut(item) ? Boolean.TRUE : null) != null) {
+            recordPut(1, waitStart);
+            return;
+        }
+
+        getWaitStats().blocked();
+        Thread current = Thread.currentThread();
+        while (true) {
+            waitingProducers.add(current);
+            if (tryPut(item)) {
+                waitingProducers.remove(current);
+                if (size.get() < capacity) wakeOne(waitingProducers);
+                recordPut(1, waitStart);
+                return;
+            }
+            LockSupport.park(this);
+            waitingProducers.remove(current);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item = dequeue();
+        if (item != null) {
+            recordTake(1, 0);
+            return item;
+        }
+
+        long waitStart = System.nanoTime();
+        if (getWaitStrategy() != WaitStrategy.BLOCK && (item = pollUntil(this::dequeue)) != null) {
+            recordTake(1, waitStart);
+            return item;
+        }
+
+        getWaitStats().blocked();
+        Thread current = Thread.currentThread();
+        while (true) {
+            waitingConsumers.add(current);
+            item = dequeue();
+            if (item != null) {
+                waitingConsumers.remove(current);
+                if (size.get() > 0) wakeOne(waitingConsumers);
+                recordTake(1, waitStart);
+                return item;
+            }
+            LockSupport.park(this);
+            waitingConsumers.remove(current);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int maxItems) throws InterruptedException {
+        target.add(take());
+        int drained = 1;
+        T item;
+        while (drained < maxItems && (item = dequeue()) != null) {
+            target.add(item);
+            drained++;
+        }
+        recordTake(drained - 1, 0);
+        return drained;
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> batch) throws InterruptedException {
+        Iterator<? extends T> iterator = batch.iterator();
+        int remaining = batch.size();
+        while (remaining > 0) {
+            int granted;
+            StorageGate entered = enterGate();
+            try {
+                granted = tryAcquireSlots(remaining);
+                for (int i = 0; i < granted; i++) {
+                    T item = iterator.next();
+                    while (!tailRing.offer(item))
+                        Thread.onSpinWait();
+                }
+            } finally {
+                exitGate(entered);
+            }
+            if (granted == 0) {
+                addItem(iterator.next());
+                remaining--;
+                continue;
+            }
+            remaining -= granted;
+            for (int i = 0; i < granted; i++)
+                wakeOne(waitingConsumers);
+            recordPut(granted, 0);
+        }
+    }
+
+    @Override
+    public void setCapacity(int newCapacity) {
+        resizeLock.lock();
+        try {
+            if (newCapacity > tailRing.length())
+                grow(newCapacity);
+            this.capacity = newCapacity;
+        } finally {
+            resizeLock.unlock();
+        }
+        wakeAll(waitingProducers);
+    }
+
+    @Override
+    public void setItems(Queue<T> items) {
+        resizeLock.lock();
+        try {
+            while (dequeue() != null) { }
+            if (items.size() > tailRing.length())
+                grow(items.size());
+            for (T item : items) {
+                size.incrementAndGet();
+                publish(item);
+            }
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    @Override
+    public Queue<T> getItems() {
+        Queue<T> snapshot = new LinkedList<>();
+        for (Ring<T> current = headRing; current != null; current = current.next)
+            current.copyTo(snapshot);
+        return snapshot;
+    }
+
+    @Override
+    public void forEachFrozen(Consumer<? super T> action) {
+        checkFrozen();
+        for (Ring<T> current = headRing; current != null; current = current.next)
+            current.forEach(action);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (!tryPut(item)) return false;
+        recordPut(1, 0);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        T item = dequeue();
+        if (item != null) recordTake(1, 0);
+        return item;
+    }
+
+    private T dequeue() {
+        StorageGate entered = enterGate();
+        try {
+            while (true) {
+                Ring<T> current = headRing;
+                T item = current.poll();
+                if (item != null) {
+                    size.decrementAndGet();
+                    wakeOne(waitingProducers);
+                    return item;
+                }
+                // A grown-out ring is left only once it is empty, so its items are taken before any of the next one's.
+                Ring<T> next = current.next;
+                if (next == null || !current.isDrained()) return null;
+                if (headRing == current) headRing = next;
+            }
+        } finally {
+            exitGate(entered);
+        }
+    }
+
+    /** Claims a slot and publishes into it as one move, so a frozen reader never sees a claimed but empty slot. */
+    private boolean tryPut(T item) {
+        StorageGate entered = enterGate();
+        try {
+            if (!tryAcquireSlot()) return false;
+            publish(item);
+            return true;
+        } finally {
+            exitGate(entered);
+        }
+    }
+
+    private boolean tryAcquireSlot() {
+        return tryAcquireSlots(1) == 1;
+    }
+
+    private int tryAcquireSlots(int wanted) {
+        while (true) {
+            int current = size.get();
+            int granted = Math.min(wanted, capacity - current);
+            if (granted <= 0) return 0;
+            if (size.compareAndSet(current, current + granted)) return granted;
+        }
+    }
+
+    private void publish(T item) {
+        while (!tailRing.offer(item))
+            Thread.onSpinWait();
+        wakeOne(waitingConsumers);
+    }
+
+    /**
+     * Starts a larger ring instead of copying the items over: the old ring is closed to producers
+     * and stays the consumers' ring until it is empty, so FIFO order holds across the growth.
+     */
+    private void grow(int minLength) {
+        Ring<T> old = tailRing;
+        Ring<T> grown = new Ring<>(minLength);
+        old.next = grown;
+        old.close();
+        tailRing = grown;
+    }
+
+    private static void wakeOne(ConcurrentLinkedQueue<Thread> waiters) {
+        Thread waiter = waiters.poll();
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+
+    private static void wakeAll(ConcurrentLinkedQueue<Thread> waiters) {
+        for (Thread waiter : waiters)
+            LockSupport.unpark(waiter);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        waitingProducers = new ConcurrentLinkedQueue<>();
+        waitingConsumers = new ConcurrentLinkedQueue<>();
+    }
+
+    private static final class Ring<T> implements java.io.Serializable {
+        private final AtomicReferenceArray<T> slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+        private volatile Ring<T> next;
+
+        Ring(int minLength) {
+            int length = Integer.highestOneBit(Math.max(2, minLength - 1)) << 1;
+            slots = new AtomicReferenceArray<>(length);
+            sequences = new AtomicLongArray(length);
+            mask = length - 1;
+            for (int i = 0; i < length; i++)
+                sequences.set(i, i);
+        }
+
+        int length() {return mask + 1; }
+
+        boolean offer(T item) {
+            long pos = tail.get();
+            while (true) {
+                if ((pos & CLOSED) != 0) return false;
+                int index = (int) pos & mask;
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots.set(index, item);
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    return false;
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        T poll() {
+            long pos = head.get();
+            while (true) {
+                int index = (int) pos & mask;
+                long diff = sequences.get(index) - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        T item = slots.get(index);
+                        slots.set(index, null);
+                        sequences.set(index, pos + mask + 1);
+                        return item;
+                    }
+                    pos = head.get();
+                } else if (diff < 0) {
+                    return null;
+                } else {
+                    pos = head.get();
+                }
+            }
+        }
+
+        void close() {
+            tail.getAndUpdate(pos -> pos | CLOSED);
+        }
+
+        /** True once the ring is closed and every item published before the close has been taken. */
+        boolean isDrained() {
+            long end = tail.get();
+            return (end & CLOSED) != 0 && head.get() >= (end & ~CLOSED);
+        }
+
+        void forEach(Consumer<? super T> action) {
+            long to = tail.get() & ~CLOSED;
+            for (long pos = head.get(); pos < to; pos++)
+                action.accept(slots.get((int) pos & mask));
+        }
+
+        void copyTo(Collection<T> target) {
+            long from = head.get();
+            long to = tail.get() & ~CLOSED;
+            for (long pos = from; pos < to; pos++) {
+                T item = slots.get((int) pos & mask);
+                if (item != null) target.add(item);
+            }
+        }
+    }
+}
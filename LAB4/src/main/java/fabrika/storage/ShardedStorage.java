@@ -0,0 +1,242 @@
+package fabrika.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A storage split into independent shards that still behaves as one storage with one capacity.
+ * Each thread puts into and takes from its home shard first and falls back to the other shards,
+ * so several suppliers and many workers rarely meet on the same lock.
+ */
+public class ShardedStorage<T> extends Storage<T> {
+    private final List<Storage<T>> shards;
+    private volatile int capacity;
+
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final Condition notFull = waitLock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    public ShardedStorage(int capacity, int shardCount, IntFunction<Storage<T>> shardFactory) {
+        super(capacity);
+        this.capacity = capacity;
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shards.add(shardFactory.apply(shardCapacity(capacity, shardCount, i)));
+    }
+
+    public int getShardCount() {return shards.size(); }
+
+    @Override
+    public int getCapacity() {return capacity; }
+
+    @Override
+    public void setGate(StorageGate gate) {
+        super.setGate(gate);
+        for (Storage<T> shard : shards)
+            shard.setGate(gate);
+    }
+
+    @Override
+    public void forEachFrozen(Consumer<? super T> action) {
+        checkFrozen();
+        for (Storage<T> shard : shards)
+            shard.forEachFrozen(action);
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (Storage<T> shard : shards)
+            size += shard.getSize();
+        return size;
+    }
+
+    @Override
+    public void addItem(T item) throws InterruptedException {
+        if (tryPut(item)) {
+            recordPut(1, 0);
+            return;
+        }
+
+        long waitStart = System.nanoTime();
+        if (getWaitStrategy() != WaitStrategy.BLOCK && pollUntil(() -> tryPut(item) ? Boolean.TRUE : null) != null) {
+            recordPut(1, waitStart);
+            return;
+        }
+
+        getWaitStats().blocked();
+        waitLock.lockInterruptibly();
+        try {
+            waitingProducers.incrementAndGet();
+            try {
+                while (!tryPut(item))
+                    notFull.await();
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+        recordPut(1, waitStart);
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item = tryTake();
+        if (item != null) {
+            recordTake(1, 0);
+            return item;
+        }
+
+        long waitStart = System.nanoTime();
+        if (getWaitStrategy() != WaitStrategy.BLOCK && (item = pollUntil(this::tryTake)) != null) {
+            recordTake(1, waitStart);
+            return item;
+        }
+
+        getWaitStats().blocked();
+        waitLock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((item = tryTake()) == null)
+                    notEmpty.await();
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+        recordTake(1, waitStart);
+        return item;
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (!tryPut(item)) return false;
+        recordPut(1, 0);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        T item = tryTake();
+        if (item != null) recordTake(1, 0);
+        return item;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int maxItems) throws InterruptedException {
+        target.add(take());
+        int drained = 1;
+        T item;
+        while (drained < maxItems && (item = tryTake()) != null) {
+            target.add(item);
+            drained++;
+        }
+        recordTake(drained - 1, 0);
+        return drained;
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> batch) throws InterruptedException {
+        for (T item : batch)
+            addItem(item);
+    }
+
+    @Override
+    public void setCapacity(int newCapacity) {
+        int count = shards.size();
+        for (int i = 0; i < count; i++)
+            shards.get(i).setCapacity(shardCapacity(newCapacity, count, i));
+        this.capacity = newCapacity;
+        signalAll(notFull);
+    }
+
+    @Override
+    public void setItems(Queue<T> items) {
+        int count = shards.size();
+        List<Queue<T>> split = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            split.add(new LinkedList<>());
+        int next = 0;
+        for (T item : items)
+            split.get(next++ % count).add(item);
+        for (int i = 0; i < count; i++)
+            shards.get(i).setItems(split.get(i));
+        signalAll(notEmpty);
+        signalAll(notFull);
+    }
+
+    @Override
+    public Queue<T> getItems() {
+        Queue<T> snapshot = new LinkedList<>();
+        for (Storage<T> shard : shards)
+            snapshot.addAll(shard.getItems());
+        return snapshot;
+    }
+
+    private boolean tryPut(T item) {
+        int count = shards.size();
+        int home = homeShard(count);
+        for (int i = 0; i < count; i++) {
+            if (shards.get((home + i) % count).offer(item)) {
+                if (waitingConsumers.get() > 0)
+                    signal(notEmpty);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private T tryTake() {
+        int count = shards.size();
+        int home = homeShard(count);
+        for (int i = 0; i < count; i++) {
+            T item = shards.get((home + i) % count).poll();
+            if (item != null) {
+                if (waitingProducers.get() > 0)
+                    signal(notFull);
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private void signal(Condition condition) {
+        waitLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private void signalAll(Condition condition) {
+        waitLock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private static int homeShard(int count) {
+        long id = Thread.currentThread().getId();
+        return Math.floorMod(Long.hashCode(id * 0x9E3779B97F4A7C15L), count);
+    }
+
+    private static int shardCapacity(int capacity, int count, int index) {
+        return capacity / count + (index < capacity % count ? 1 : 0);
+    }
+}
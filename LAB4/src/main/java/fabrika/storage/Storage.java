@@ -1,44 +1,370 @@
 package fabrika.storage;
 
+import fabrika.metrics.StorageMetrics;
+
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class Storage<T> implements Serializable {
-    private int capacity;
+    private volatile int capacity;
     private Queue<T> items = new LinkedList<>();
+    // Mirrors items.size() so monitoring can read it without taking the lock.
+    private volatile int size;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private transient volatile StorageMetrics metrics;
+    private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCK;
+    private final WaitStats waitStats = new WaitStats();
+    private transient volatile StorageGate gate;
+    private transient volatile Runnable putListener;
 
     public Storage(int capacity) {this.capacity = capacity; }
     public int getCapacity() {return capacity; }
-    public synchronized int getSize() {return items.size(); }
+    public StorageMetrics getMetrics() {return metrics; }
+    public void setMetrics(StorageMetrics metrics) {this.metrics = metrics; }
+
+    public WaitStrategy getWaitStrategy() {return waitStrategy; }
+    public void setWaitStrategy(WaitStrategy waitStrategy) {this.waitStrategy = waitStrategy; }
+    public WaitStats getWaitStats() {return waitStats; }
+
+    public int getSize() {return size; }
+
+    public StorageGate getGate() {return gate; }
+    public void setGate(StorageGate gate) {this.gate = gate; }
+
+    /** Runs after every put, for consumers that wait on several storages at once. */
+    public void setPutListener(Runnable putListener) {this.putListener = putListener; }
 
-    public synchronized void addItem(T item) throws InterruptedException {
-        while(items.size() >= capacity){
-            wait();
+    public void addItem(T item) throws InterruptedException {
+        long waitStart = 0;
+        if (waitStrategy != WaitStrategy.BLOCK) {
+            if (tryPut(item)) {
+                recordPut(1, 0);
+                return;
+            }
+            waitStart = System.nanoTime();
+            if (pollUntil(() -> tryPut(item) ? Boolean.TRUE : null) != null) {
+                recordPut(1, waitStart);
+                return;
+            }
         }
-        items.add(item);
-        notifyAll();
+        lock.lockInterruptibly();
+        try {
+            while (items.size() >= capacity) {
+                if (waitStart == 0) waitStart = System.nanoTime();
+                waitStats.blocked();
+                notFull.await();
+            }
+            putLocked(item);
+        } finally {
+            lock.unlock();
+        }
+        recordPut(1, waitStart);
     }
 
-    public synchronized T take() throws InterruptedException {
-        while (items.isEmpty())
-            wait();
+    public T take() throws InterruptedException {
+        long waitStart = 0;
+        T item;
+        if (waitStrategy != WaitStrategy.BLOCK) {
+            if ((item = tryTake()) != null) {
+                recordTake(1, 0);
+                return item;
+            }
+            waitStart = System.nanoTime();
+            if ((item = pollUntil(this::tryTake)) != null) {
+                recordTake(1, waitStart);
+                return item;
+            }
+        }
+        lock.lockInterruptibly();
+        try {
+            while (items.isEmpty()) {
+                if (waitStart == 0) waitStart = System.nanoTime();
+                waitStats.blocked();
+                notEmpty.await();
+            }
+            item = takeLocked();
+        } finally {
+            lock.unlock();
+        }
+        recordTake(1, waitStart);
+        return item;
+    }
+
+    public boolean offer(T item) {
+        lock.lock();
+        try {
+            if (items.size() >= capacity) return false;
+            putLocked(item);
+        } finally {
+            lock.unlock();
+        }
+        recordPut(1, 0);
+        return true;
+    }
 
-        T item = items.poll();
-        notifyAll();
+    public T poll() {
+        T item;
+        lock.lock();
+        try {
+            if (items.isEmpty()) return null;
+            item = takeLocked();
+        } finally {
+            lock.unlock();
+        }
+        recordTake(1, 0);
         return item;
     }
 
-    public synchronized void setCapacity(int newCapacity) {
-        this.capacity = newCapacity;
-        notifyAll();
+    public int drainTo(Collection<? super T> target, int maxItems) throws InterruptedException {
+        long waitStart = 0;
+        Integer drained;
+        if (waitStrategy != WaitStrategy.BLOCK) {
+            if ((drained = tryDrain(target, maxItems)) != null) {
+                recordTake(drained, 0);
+                return drained;
+            }
+            waitStart = System.nanoTime();
+            if ((drained = pollUntil(() -> tryDrain(target, maxItems))) != null) {
+                recordTake(drained, waitStart);
+                return drained;
+            }
+        }
+        lock.lockInterruptibly();
+        try {
+            while (items.isEmpty()) {
+                if (waitStart == 0) waitStart = System.nanoTime();
+                waitStats.blocked();
+                notEmpty.await();
+            }
+            drained = drainLocked(target, maxItems);
+        } finally {
+            lock.unlock();
+        }
+        recordTake(drained, waitStart);
+        return drained;
+    }
+
+    public void addAll(Collection<? extends T> batch) throws InterruptedException {
+        Iterator<? extends T> iterator = batch.iterator();
+        long waitStart = 0;
+        while (iterator.hasNext()) {
+            // A batch larger than the free room goes through the wait strategy each time the storage fills up.
+            if (waitStrategy != WaitStrategy.BLOCK) {
+                if (tryPutAll(iterator)) continue;
+                if (waitStart == 0) waitStart = System.nanoTime();
+                if (pollUntil(() -> tryPutAll(iterator) ? Boolean.TRUE : null) != null) continue;
+            }
+            lock.lockInterruptibly();
+            try {
+                while (items.size() >= capacity) {
+                    if (waitStart == 0) waitStart = System.nanoTime();
+                    waitStats.blocked();
+                    notFull.await();
+                }
+                putAllLocked(iterator);
+            } finally {
+                lock.unlock();
+            }
+        }
+        recordPut(batch.size(), waitStart);
+    }
+
+    // The try* methods are the attempts of the non-blocking strategies: each does the actual move if the lock is free
+    // and there is room or an item, so a waiter that sees a chance takes it instead of falling into await.
+
+    private boolean tryPut(T item) {
+        if (size >= capacity || !lock.tryLock()) return false;
+        try {
+            if (items.size() >= capacity) return false;
+            putLocked(item);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T tryTake() {
+        if (size == 0 || !lock.tryLock()) return null;
+        try {
+            return items.isEmpty() ? null : takeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Integer tryDrain(Collection<? super T> target, int maxItems) {
+        if (size == 0 || !lock.tryLock()) return null;
+        try {
+            return items.isEmpty() ? null : drainLocked(target, maxItems);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryPutAll(Iterator<? extends T> iterator) {
+        if (size >= capacity || !lock.tryLock()) return false;
+        try {
+            if (items.size() >= capacity) return false;
+            putAllLocked(iterator);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putLocked(T item) {
+        StorageGate entered = enterGate();
+        try {
+            items.add(item);
+            size = items.size();
+        } finally {
+            exitGate(entered);
+        }
+        notEmpty.signal();
+    }
+
+    private T takeLocked() {
+        T item;
+        StorageGate entered = enterGate();
+        try {
+            item = items.poll();
+            size = items.size();
+        } finally {
+            exitGate(entered);
+        }
+        notFull.signal();
+        return item;
+    }
+
+    private int drainLocked(Collection<? super T> target, int maxItems) {
+        int drained = 0;
+        StorageGate entered = enterGate();
+        try {
+            while (drained < maxItems && !items.isEmpty()) {
+                target.add(items.poll());
+                notFull.signal();
+                drained++;
+            }
+            size = items.size();
+        } finally {
+            exitGate(entered);
+        }
+        return drained;
+    }
+
+    private void putAllLocked(Iterator<? extends T> iterator) {
+        StorageGate entered = enterGate();
+        try {
+            while (iterator.hasNext() && items.size() < capacity) {
+                items.add(iterator.next());
+                notEmpty.signal();
+            }
+            size = items.size();
+        } finally {
+            exitGate(entered);
+        }
+    }
+
+    public void setCapacity(int newCapacity) {
+        lock.lock();
+        try {
+            this.capacity = newCapacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setItems(Queue<T> items){
+        lock.lock();
+        try {
+            this.items = items;
+            size = items.size();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A copy of the queue, holding the items themselves. With part pooling a taken item may be reused at once,
+     * so read them only while the factory is stopped, or use {@link #forEachFrozen} to copy what is needed.
+     */
+    public Queue<T> getItems(){
+        lock.lock();
+        try {
+            return new LinkedList<>(items);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Visits the items oldest first without taking the lock, so it may only run inside
+     * {@link StorageGate#frozen} of this storage's gate; the reader copies what it needs before the gate opens.
+     */
+    public void forEachFrozen(Consumer<? super T> action) {
+        checkFrozen();
+        items.forEach(action);
+    }
+
+    protected final void checkFrozen() {
+        StorageGate current = gate;
+        if (current == null || !current.isFrozenByCurrentThread())
+            throw new IllegalStateException("Storage read outside a frozen storage gate");
+    }
+
+    /** Passes the gate for one move of items; the caller exits in a finally block and never waits in between. */
+    protected final StorageGate enterGate() {
+        StorageGate current = gate;
+        if (current != null) current.enter();
+        return current;
+    }
+
+    protected static void exitGate(StorageGate entered) {
+        if (entered != null) entered.exit();
+    }
+
+    /** One non-blocking try of a waiting operation; null means it has to wait longer. */
+    protected interface Attempt<R> {
+        R tryOnce();
+    }
+
+    /**
+     * Runs the spin, yield and park phases of the wait strategy until the attempt succeeds.
+     * Returns null when the strategy says to block, which the caller then does on its own signalling.
+     */
+    protected final <R> R pollUntil(Attempt<R> attempt) throws InterruptedException {
+        WaitStrategy strategy = waitStrategy;
+        for (int round = 0; strategy.idle(round, waitStats); round++) {
+            R result = attempt.tryOnce();
+            if (result != null) return result;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        return null;
     }
 
-    public synchronized void setItems(Queue<T> items){
-        this.items = items;
+    protected final void recordPut(int count, long waitStart) {
+        Runnable listener = putListener;
+        if (listener != null && count > 0)
+            listener.run();
+        StorageMetrics current = metrics;
+        if (current != null && count > 0)
+            current.recordPut(count, waitStart == 0 ? 0 : System.nanoTime() - waitStart);
     }
 
-    public synchronized Queue<T> getItems(){
-        return items;
+    protected final void recordTake(int count, long waitStart) {
+        StorageMetrics current = metrics;
+        if (current != null && count > 0)
+            current.recordTake(count, waitStart == 0 ? 0 : System.nanoTime() - waitStart);
     }
 }
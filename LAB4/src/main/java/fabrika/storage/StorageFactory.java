@@ -0,0 +1,30 @@
+package fabrika.storage;
+
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+public class StorageFactory {
+    private final String storageType;
+
+    public StorageFactory(FactoryConfig config) {
+        this.storageType = config.getString("StorageType", "locked");
+    }
+
+    /** Splits the storage into shards when more than one is asked for, e.g. one per supplier. */
+    public <T> Storage<T> create(int capacity, int shards) {
+        if (shards <= 1)
+            return create(capacity);
+        return new ShardedStorage<>(capacity, shards, this::create);
+    }
+
+    public <T> Storage<T> create(int capacity) {
+        switch (storageType) {
+            case "locked":
+                return new Storage<>(capacity);
+            case "ring":
+                return new RingBufferStorage<>(capacity);
+            default:
+                throw new FactoryException("Error: Unknown storage type: " + storageType);
+        }
+    }
+}
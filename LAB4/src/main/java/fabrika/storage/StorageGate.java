@@ -0,0 +1,32 @@
+package fabrika.storage;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lets a reader see several storages at one instant. Storages sharing a gate pass it only for the step that
+ * actually moves items in or out, never while they wait, so freezing the gate just waits out the moves in progress
+ * and holds off new ones until the reader is done. Every item is then in exactly one storage or in nobody's.
+ */
+public class StorageGate {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Work that runs while the storages are frozen. */
+    public interface FrozenAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /** Runs action with no item entering or leaving any storage on this gate; keep it short, production waits. */
+    public <E extends Exception> void frozen(FrozenAction<E> action) throws E {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isFrozenByCurrentThread() {return lock.isWriteLockedByCurrentThread(); }
+
+    void enter() {lock.readLock().lock(); }
+    void exit() {lock.readLock().unlock(); }
+}
@@ -0,0 +1,59 @@
+package fabrika.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All-or-nothing claims on several storages at once.
+ * A claim either reserves every requested item or rolls back and reserves nothing, so a consumer never holds
+ * part of a set while waiting for the rest and two consumers cannot deadlock on each other's partial takes.
+ * Once reserved, the items are taken with {@link #take}, which cannot block or come back empty.
+ * Every consumer of these storages has to go through the reservation, otherwise a claim may find its items gone.
+ */
+public class StorageReservation {
+    private final Storage<?>[] storages;
+    private final AtomicInteger[] reserved;
+
+    public StorageReservation(Storage<?>... storages) {
+        this.storages = storages;
+        this.reserved = new AtomicInteger[storages.length];
+        for (int i = 0; i < storages.length; i++)
+            reserved[i] = new AtomicInteger();
+    }
+
+    /** Reserves counts[i] items of storage i, or nothing if any storage lacks unreserved items. */
+    public boolean tryReserve(int[] counts) {
+        for (int i = 0; i < storages.length; i++) {
+            if (!tryReserve(i, counts[i])) {
+                for (int j = 0; j < i; j++)
+                    reserved[j].addAndGet(-counts[j]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes a reserved item without blocking. The reservation is released only after the item is out,
+     * so meanwhile the storage looks emptier to other claims than it is, never fuller.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T take(int storage) {
+        Storage<T> source = (Storage<T>) storages[storage];
+        T item;
+        // A sharded storage may miss an item that moves between shards; the item is reserved, so it shows up.
+        while ((item = source.poll()) == null)
+            Thread.yield();
+        reserved[storage].decrementAndGet();
+        return item;
+    }
+
+    private boolean tryReserve(int storage, int count) {
+        while (true) {
+            int current = reserved[storage].get();
+            if (storages[storage].getSize() - current < count)
+                return false;
+            if (reserved[storage].compareAndSet(current, current + count))
+                return true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package fabrika.storage;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/** How many waits on a storage reached each phase; one wait can pass through several phases. */
+public class WaitStats implements Serializable {
+    private final LongAdder spins = new LongAdder();
+    private final LongAdder yields = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+
+    void spun() {spins.increment(); }
+    void yielded() {yields.increment(); }
+    void parked() {parks.increment(); }
+    void blocked() {blocks.increment(); }
+
+    public long getSpins() {return spins.sum(); }
+    public long getYields() {return yields.sum(); }
+    public long getParks() {return parks.sum(); }
+    public long getBlocks() {return blocks.sum(); }
+}
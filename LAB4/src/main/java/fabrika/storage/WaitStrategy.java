@@ -0,0 +1,68 @@
+package fabrika.storage;
+
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a producer or consumer waits on a full or empty storage: a trade of CPU for handoff latency.
+ * Only BLOCK ever sleeps until signalled; the other strategies keep polling and never reach the storage's blocking path.
+ */
+public enum WaitStrategy {
+    /** Polls in a tight loop; the lowest latency, but burns a core per waiter. */
+    BUSY_SPIN("spin"),
+    /** Spins briefly, then yields the core between polls. */
+    SPIN_YIELD("yield"),
+    /** Spins briefly, then sleeps a fixed short time between polls. */
+    PARK("park"),
+    /** Sleeps until the other side signals; the storage's classic behaviour. */
+    BLOCK("block");
+
+    static final int SPIN_TRIES = 128;
+    static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final String configName;
+
+    WaitStrategy(String configName) {this.configName = configName; }
+
+    public String getConfigName() {return configName; }
+
+    /** Reads the strategy of one storage from key, falling back to StorageWaitStrategy and then to block. */
+    public static WaitStrategy fromConfig(FactoryConfig config, String key) {
+        String name = config.getString(key, config.getString("StorageWaitStrategy", BLOCK.configName));
+        for (WaitStrategy strategy : values())
+            if (strategy.configName.equalsIgnoreCase(name))
+                return strategy;
+        throw new FactoryException("Error: Unknown storage wait strategy: " + name);
+    }
+
+    /**
+     * One idle step of a waiter that has polled in vain round times so far.
+     * Returns false when the waiter should block until signalled instead.
+     */
+    boolean idle(int round, WaitStats stats) {
+        switch (this) {
+            case BUSY_SPIN:
+                if (round == 0) stats.spun();
+                Thread.onSpinWait();
+                return true;
+            case SPIN_YIELD:
+            case PARK:
+                if (round < SPIN_TRIES) {
+                    if (round == 0) stats.spun();
+                    Thread.onSpinWait();
+                } else if (this == SPIN_YIELD) {
+                    if (round == SPIN_TRIES) stats.yielded();
+                    Thread.yield();
+                } else {
+                    if (round == SPIN_TRIES) stats.parked();
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+}
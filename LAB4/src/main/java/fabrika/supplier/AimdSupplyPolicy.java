@@ -0,0 +1,29 @@
+package fabrika.supplier;
+
+/**
+ * Additive increase while the storage runs low or drains, multiplicative decrease once it fills up.
+ * The increase is a fraction of the supplier's top rate, so it scales with the configured delay.
+ */
+public class AimdSupplyPolicy implements SupplyPolicy {
+    private final double lowWater;
+    private final double highWater;
+    private final double increase;
+    private final double decrease;
+
+    public AimdSupplyPolicy(double lowWater, double highWater, double increase, double decrease) {
+        this.lowWater = lowWater;
+        this.highWater = highWater;
+        this.increase = increase;
+        this.decrease = decrease;
+    }
+
+    @Override
+    public double targetRate(SupplySnapshot snapshot) {
+        double rate = snapshot.getCurrentRate();
+        if (snapshot.getFill() >= highWater)
+            return rate * decrease;
+        if (snapshot.getFill() < lowWater || snapshot.getConsumptionRate() >= rate)
+            return rate + increase * snapshot.getMaxRate();
+        return rate;
+    }
+}
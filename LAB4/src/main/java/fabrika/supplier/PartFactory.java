@@ -0,0 +1,10 @@
+package fabrika.supplier;
+
+import fabrika.CarPart.CarParts;
+
+import java.io.Serializable;
+
+@FunctionalInterface
+public interface PartFactory<T extends CarParts> extends Serializable {
+    T create();
+}
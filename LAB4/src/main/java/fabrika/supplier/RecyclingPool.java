@@ -0,0 +1,36 @@
+package fabrika.supplier;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class RecyclingPool<T> {
+    private static final int MAX_PROBES = 16;
+
+    private final AtomicReferenceArray<T> slots;
+
+    public RecyclingPool(int capacity) {this.slots = new AtomicReferenceArray<>(capacity); }
+
+    /** Returns a pooled instance, or null when none was found within a few probes. */
+    public T acquire() {
+        int length = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(length);
+        for (int i = 0; i < Math.min(MAX_PROBES, length); i++) {
+            int index = (start + i) % length;
+            T item = slots.get(index);
+            if (item != null && slots.compareAndSet(index, item, null))
+                return item;
+        }
+        return null;
+    }
+
+    /** Offers an instance for reuse; it is left to the garbage collector when the pool looks full. */
+    public void release(T item) {
+        int length = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(length);
+        for (int i = 0; i < Math.min(MAX_PROBES, length); i++) {
+            int index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, item))
+                return;
+        }
+    }
+}
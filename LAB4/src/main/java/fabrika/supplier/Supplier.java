@@ -1,25 +1,46 @@
 package fabrika.supplier;
 
 import fabrika.CarPart.CarParts;
+import fabrika.journal.FactoryJournal;
 import fabrika.storage.Storage;
+import fabrika.workers.TimingWheel;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Supplier<T extends CarParts> implements Runnable, Serializable {
     private  Storage<T> storage; //FIXME trancient серилизацию сделать и убрать тогда геттер и сеттер
-    private final Class<T> partType;
-    private int delay;
-    private int suppliedCount;
+    private final PartFactory<T> partFactory;
+    private transient RecyclingPool<T> pool;
+    private transient FactoryJournal journal;
+    private volatile int delay;
+    // Set by a SupplyController; the supplier never runs faster than delay allows.
+    private volatile int adaptiveDelay;
+    private final AtomicInteger suppliedCount = new AtomicInteger();
+    // Ids of parts counted and journaled but not stored yet, guarded by this.
+    private final Set<Integer> inFlight = new HashSet<>();
 
     public void setDelay(int delay) {this.delay = delay; }
     public int getDelay() {return delay; }
-    public int getSuppliedCount() {return suppliedCount; }
+    public int getEffectiveDelay() {return Math.max(delay, adaptiveDelay); }
+    public void setAdaptiveDelay(int adaptiveDelay) {this.adaptiveDelay = adaptiveDelay; }
+    public int getSuppliedCount() {return suppliedCount.get(); }
 
-    public Supplier(Storage<T> storage, Class<T> partType, int delay) {
+    /** The supplied count and the ids of the parts it includes that are not stored yet, read at one instant. */
+    public synchronized int getSuppliedCount(Collection<Integer> inFlightIds) {
+        inFlightIds.addAll(inFlight);
+        return suppliedCount.get();
+    }
+
+    public int markSupplied() {return suppliedCount.incrementAndGet(); }
+
+    public Supplier(Storage<T> storage, PartFactory<T> partFactory, int delay) {
         this.storage = storage;
-        this.partType = partType;
+        this.partFactory = partFactory;
         this.delay = delay;
-        this.suppliedCount = 0;
     }
 
     public void setStorage(Storage<T> storage){
@@ -31,22 +52,115 @@ public class Supplier<T extends CarParts> implements Runnable, Serializable {
     }
 
     public void setSuppliedCount(int suppliedCount){
-        this.suppliedCount = suppliedCount;
+        this.suppliedCount.set(suppliedCount);
+    }
+
+    public void setJournal(FactoryJournal journal) {this.journal = journal; }
+
+    public void enablePool(int poolSize) {
+        this.pool = poolSize > 0 ? new RecyclingPool<>(poolSize) : null;
+    }
+
+    public void recycle(T part) {
+        RecyclingPool<T> current = pool;
+        if (current != null)
+            current.release(part);
+    }
+
+    public T producePart() {
+        RecyclingPool<T> current = pool;
+        T part = current != null ? current.acquire() : null;
+        if (part == null)
+            part = partFactory.create();
+        else
+            part.renew();
+        part.setProducedNanos(System.nanoTime());
+        return part;
+    }
+
+    /** Stores a part from reserve if there is room; one that is given up on instead has to be withdrawn. */
+    public boolean tryDeliver(T part) {
+        int id = part.getId();
+        if (!storage.offer(part)) return false;
+        delivered(id);
+        return true;
     }
 
     @Override
     public void run() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                T part = partType.getDeclaredConstructor().newInstance();
-                storage.addItem(part);
-                suppliedCount++;
-                Thread.sleep(delay);
+                T part = reserve();
+                int id = part.getId();
+                boolean stored = false;
+                try {
+                    storage.addItem(part);
+                    stored = true;
+                } finally {
+                    if (!stored) withdraw(part);
+                }
+                delivered(id);
+                Thread.sleep(getEffectiveDelay());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
+
+    /**
+     * Produces a part, counts it and journals it before it is stored, as a stored part can be assembled,
+     * sold and recycled under a new id right away. A part that is then not stored has to be withdrawn.
+     * Until it is stored it is in flight, and a checkpoint keeps it with the storage, as journal replay does.
+     */
+    public T reserve() {
+        T part = producePart();
+        synchronized (this) {
+            int count = suppliedCount.incrementAndGet();
+            inFlight.add(part.getId());
+            if (journal != null)
+                journal.supplied(part, count);
+        }
+        return part;
+    }
+
+    /** Records that a journaled part never reached the storage, so recovery does not bring it back. */
+    public void withdraw(T part) {
+        synchronized (this) {
+            inFlight.remove(part.getId());
+        }
+        if (journal != null)
+            journal.withdrawn(part);
+    }
+
+    /** partId is the id the part was stored with; it may have been taken and renewed since. */
+    private synchronized void delivered(int partId) {inFlight.remove(partId); }
+
+    /**
+     * One delivery chain driven by a timing wheel instead of a thread; several chains may share this supplier.
+     * A part that does not fit into the full storage is kept and offered again after a short backoff.
+     */
+    public TimingWheel.Periodic ticker() {
+        return new TimingWheel.Periodic() {
+            private T pending;
+            private int idleTicks;
+
+            @Override
+            public long tick() {
+                if (pending == null)
+                    pending = reserve();
+                if (!tryDeliver(pending))
+                    return TimingWheel.retryDelay(idleTicks++);
+                pending = null;
+                idleTicks = 0;
+                return getEffectiveDelay();
+            }
+
+            @Override
+            public void cancel() {
+                if (pending != null)
+                    withdraw(pending);
+                pending = null;
+            }
+        };
+    }
 }
@@ -0,0 +1,83 @@
+package fabrika.supplier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts supplier rates to demand: every interval it estimates how fast each storage is consumed,
+ * asks the policy for a rate and turns it into the supplier's adaptive delay.
+ * Consumption is derived from supplied parts minus the change in fill level, so no storage counters are needed.
+ */
+public class SupplyController implements Runnable {
+    public static final int DEFAULT_INTERVAL = 200;
+
+    private static final double RATE_SMOOTHING = 0.3;
+    // An idle supplier still wakes at least once a second, so it can catch up quickly when demand returns.
+    private static final int MAX_ADAPTIVE_DELAY = 1000;
+
+    private final SupplyPolicy policy;
+    private final int interval;
+    private final List<Loop> loops = new ArrayList<>();
+
+    public SupplyController(SupplyPolicy policy, int interval) {
+        this.policy = policy;
+        this.interval = interval;
+    }
+
+    /** chains is the number of threads or wheel chains running the supplier, each sleeping the delay on its own. */
+    public void add(Supplier<?> supplier, int chains) {loops.add(new Loop(supplier, chains)); }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                adjust(System.nanoTime());
+                Thread.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized void adjust(long nowNanos) {
+        for (Loop loop : loops)
+            loop.adjust(nowNanos);
+    }
+
+    private final class Loop {
+        private final Supplier<?> supplier;
+        private final int chains;
+        private long lastTime = -1;
+        private int lastSupplied;
+        private int lastLevel;
+        private double consumptionRate;
+        private double rate = -1;
+
+        Loop(Supplier<?> supplier, int chains) {
+            this.supplier = supplier;
+            this.chains = chains;
+        }
+
+        void adjust(long nowNanos) {
+            int supplied = supplier.getSuppliedCount();
+            int level = supplier.getStorage().getSize();
+            double maxRate = chains * 1000.0 / Math.max(1, supplier.getDelay());
+            double minRate = chains * 1000.0 / Math.max(MAX_ADAPTIVE_DELAY, supplier.getDelay());
+            if (rate < 0) rate = maxRate;
+
+            double elapsed = lastTime < 0 ? 0 : (nowNanos - lastTime) / 1e9;
+            if (elapsed > 0) {
+                double consumed = Math.max(0, (supplied - lastSupplied) - (level - lastLevel));
+                consumptionRate += RATE_SMOOTHING * (consumed / elapsed - consumptionRate);
+            }
+            lastTime = nowNanos;
+            lastSupplied = supplied;
+            lastLevel = level;
+
+            SupplySnapshot snapshot = new SupplySnapshot(level, supplier.getStorage().getCapacity(), consumptionRate,
+                    rate, maxRate, elapsed);
+            rate = Math.max(minRate, Math.min(maxRate, policy.targetRate(snapshot)));
+            supplier.setAdaptiveDelay((int) Math.min(Integer.MAX_VALUE, Math.round(chains * 1000.0 / rate)));
+        }
+    }
+}
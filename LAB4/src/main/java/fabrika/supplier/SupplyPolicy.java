@@ -0,0 +1,28 @@
+package fabrika.supplier;
+
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+public interface SupplyPolicy {
+    /** Parts per second the supplier should deliver until the next adjustment. */
+    double targetRate(SupplySnapshot snapshot);
+
+    /** Returns null for SupplyPolicy=fixed, where suppliers keep to their configured delay. */
+    static SupplyPolicy fromConfig(FactoryConfig config) {
+        String name = config.getString("SupplyPolicy", "fixed");
+        switch (name) {
+            case "fixed":
+                return null;
+            case "aimd":
+                return new AimdSupplyPolicy(config.getDouble("SupplyLowWater", 0.25),
+                        config.getDouble("SupplyHighWater", 0.75),
+                        config.getDouble("SupplyIncrease", 0.1),
+                        config.getDouble("SupplyDecrease", 0.5));
+            case "target":
+                return new TargetFillSupplyPolicy(config.getDouble("SupplyTargetFill", 0.5),
+                        config.getDouble("SupplyHorizon", 1.0));
+            default:
+                throw new FactoryException("Error: Unknown supply policy: " + name);
+        }
+    }
+}
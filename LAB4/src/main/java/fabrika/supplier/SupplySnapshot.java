@@ -0,0 +1,27 @@
+package fabrika.supplier;
+
+public class SupplySnapshot {
+    private final int level;
+    private final int capacity;
+    private final double consumptionRate;
+    private final double currentRate;
+    private final double maxRate;
+    private final double elapsedSeconds;
+
+    public SupplySnapshot(int level, int capacity, double consumptionRate, double currentRate, double maxRate, double elapsedSeconds) {
+        this.level = level;
+        this.capacity = capacity;
+        this.consumptionRate = consumptionRate;
+        this.currentRate = currentRate;
+        this.maxRate = maxRate;
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    public int getLevel() {return level; }
+    public int getCapacity() {return capacity; }
+    public double getFill() {return capacity == 0 ? 1 : (double) level / capacity; }
+    public double getConsumptionRate() {return consumptionRate; }
+    public double getCurrentRate() {return currentRate; }
+    public double getMaxRate() {return maxRate; }
+    public double getElapsedSeconds() {return elapsedSeconds; }
+}
@@ -0,0 +1,18 @@
+package fabrika.supplier;
+
+/** Matches the consumption rate and closes the gap to the target fill level over the given horizon. */
+public class TargetFillSupplyPolicy implements SupplyPolicy {
+    private final double targetFill;
+    private final double horizonSeconds;
+
+    public TargetFillSupplyPolicy(double targetFill, double horizonSeconds) {
+        this.targetFill = targetFill;
+        this.horizonSeconds = horizonSeconds;
+    }
+
+    @Override
+    public double targetRate(SupplySnapshot snapshot) {
+        double gap = targetFill * snapshot.getCapacity() - snapshot.getLevel();
+        return snapshot.getConsumptionRate() + gap / horizonSeconds;
+    }
+}
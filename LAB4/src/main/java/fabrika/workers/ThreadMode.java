@@ -0,0 +1,39 @@
+package fabrika.workers;
+
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public static ThreadMode fromConfig(FactoryConfig config) {
+        String mode = config.getString("ThreadMode", "platform");
+        try {
+            return valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new FactoryException("Error: Unknown thread mode: " + mode);
+        }
+    }
+
+    public ThreadFactory threadFactory() {
+        if (this == PLATFORM)
+            return Thread::new;
+
+        // Virtual threads need Java 21, while the build still targets Java 9, so the builder is looked up at runtime.
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builderClass));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            return (ThreadFactory) factory.invoke(ofVirtual.invoke());
+        } catch (Throwable e) {
+            throw new FactoryException("Error: Virtual threads are not supported by this JVM (Java 21+ required)");
+        }
+    }
+}
@@ -1,86 +1,205 @@
 package fabrika.workers;
 import fabrika.exeptions.InvalidThreadPoolSizeException;
+import fabrika.metrics.ThreadPoolMetrics;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Queue;
-
-import static java.lang.Thread.sleep;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 public class ThreadPool
 {
-    private List<Thread> workers;
-    private final Queue<Runnable> taskQueue = new LinkedList<>();
-    private boolean isRunning = true;
-    private int workerCount;
+    private static final ThreadLocal<PoolWorker> CURRENT = new ThreadLocal<>();
+
+    private final ThreadFactory threadFactory;
+    private volatile PoolWorker[] workers = new PoolWorker[0];
+    private final ConcurrentLinkedQueue<PoolWorker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicInteger liveThreads = new AtomicInteger();
+    private volatile boolean isRunning = true;
+    private volatile ThreadPoolMetrics metrics;
+    private volatile int workerCount;
+
+    public ThreadPool(int workerCount) {this(workerCount, ThreadMode.PLATFORM.threadFactory()); }
+
+    public ThreadPool(int workerCount, ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        setWorkerCount(workerCount);
+    }
 
-    public ThreadPool(int workerCount) {setWorkerCount(workerCount); }
-    public synchronized int getQueueSize() {return taskQueue.size(); }
+    public int getQueueSize() {return queuedTasks.get(); }
     public int getWorkerCount() {return workerCount; }
+    public int getLiveThreadCount() {return liveThreads.get(); }
+    public void setMetrics(ThreadPoolMetrics metrics) {this.metrics = metrics; }
 
-    public void submitTask(Runnable task) {
-        synchronized (this) {
-            taskQueue.add(task);
-            notify();
-        }
+    /** Returns false, and drops the task, once the pool is shut down. */
+    public boolean submitTask(Runnable task) {
+        if (!isRunning) return false;
+
+        ThreadPoolMetrics currentMetrics = metrics;
+        if (currentMetrics != null)
+            task = currentMetrics.wrap(task);
+        enqueue(task);
+        return true;
     }
 
-    public void setWorkerCount(int newCount) {
+    private void enqueue(Runnable task) {
+        PoolWorker[] current = workers;
+        PoolWorker caller = CURRENT.get();
+        PoolWorker target = caller != null && caller.pool == this && caller.active
+                ? caller
+                : current[Math.floorMod(nextWorker.getAndIncrement(), current.length)];
+
+        queuedTasks.incrementAndGet();
+        target.deque.addLast(task);
+        if (!target.active)
+            target.handOver();
+        wakeIdleWorker();
+    }
+
+    /**
+     * Resizes the pool in place. Growing starts extra threads; shrinking retires the idlest workers,
+     * which finish their current task and hand queued tasks to the remaining workers instead of being interrupted.
+     */
+    public synchronized void setWorkerCount(int newCount) {
         if (newCount <= 0) throw new InvalidThreadPoolSizeException(newCount);
 
-        synchronized (this) {
-            if (workers != null) {
-                for (Thread worker : workers)
-                    worker.interrupt();
+        PoolWorker[] current = workers;
+        if (newCount > current.length) {
+            PoolWorker[] grown = new PoolWorker[newCount];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            for (int i = current.length; i < newCount; i++)
+                grown[i] = new PoolWorker(this, threadFactory);
+
+            workers = grown;
+            for (int i = current.length; i < newCount; i++)
+                grown[i].thread.start();
+        } else if (newCount < current.length) {
+            List<PoolWorker> candidates = new ArrayList<>(List.of(current));
+            candidates.sort(Comparator.comparing((PoolWorker worker) -> worker.busy)
+                    .thenComparingInt(worker -> worker.deque.size()));
+            List<PoolWorker> retiring = candidates.subList(0, current.length - newCount);
+
+            List<PoolWorker> kept = new ArrayList<>(newCount);
+            for (PoolWorker worker : current)
+                if (!retiring.contains(worker)) kept.add(worker);
+            workers = kept.toArray(new PoolWorker[0]);
+
+            for (PoolWorker worker : retiring) {
+                worker.active = false;
+                idleWorkers.remove(worker);
+                LockSupport.unpark(worker.thread);
             }
-            this.workerCount = newCount;
-            workers = new LinkedList<>();
-
-            for (int i = 0; i < workerCount; i++) {
-                Thread workerThread = new Thread(() -> {
-                    synchronized (ThreadPool.this) {
-                        Runnable task = null;
-                        while (isRunning) {
-                            task = null;
-
-                            while (taskQueue.isEmpty() && isRunning) {
-                                try {
-                                    wait();
-                                } catch (InterruptedException e) {
-                                    Thread.currentThread().interrupt();
-                                    return;
-                                }
-                            }
-
-                            if (!isRunning) {
-                                break;
-                            }
-
-                            task = taskQueue.poll();
-                        }
-
-                        if (task != null) {
-                            try {
-                                task.run();
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                });
-
-                workerThread.start();
-                workers.add(workerThread);
+        }
+        this.workerCount = newCount;
+    }
+
+    public synchronized void shutdown() {
+        isRunning = false;
+        for (PoolWorker worker : workers) {
+            worker.active = false;
+            worker.thread.interrupt();
+        }
+    }
+
+    private void wakeIdleWorker() {
+        PoolWorker idle;
+        // A retiring worker may still sit in the queue; waking it would only let it exit.
+        while ((idle = idleWorkers.poll()) != null) {
+            if (idle.active) {
+                LockSupport.unpark(idle.thread);
+                return;
             }
         }
     }
 
-    public void shutdown() {
+    private Runnable findTask(PoolWorker self) {
+        Runnable task = self.deque.pollLast();
+        if (task != null) return task;
+
+        PoolWorker[] current = workers;
+        int n = current.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            PoolWorker victim = current[(start + i) % n];
+            if (victim == self) continue;
+            task = victim.deque.pollFirst();
+            if (task != null) return task;
+        }
+        return null;
+    }
 
-        synchronized (this) {
-            isRunning = false;
-            notify();            }
-        for (Thread worker : workers)
-            worker.interrupt();
+    private boolean hasQueuedTasks() {
+        for (PoolWorker worker : workers)
+            if (!worker.deque.isEmpty()) return true;
+        return false;
+    }
+
+    private static final class PoolWorker implements Runnable {
+        private final ThreadPool pool;
+        private final Thread thread;
+        private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+        private volatile boolean active = true;
+        private volatile boolean busy;
+
+        PoolWorker(ThreadPool pool, ThreadFactory threadFactory) {
+            this.pool = pool;
+            this.thread = threadFactory.newThread(this);
+        }
+
+        @Override
+        public void run() {
+            CURRENT.set(this);
+            pool.liveThreads.incrementAndGet();
+            while (active && pool.isRunning) {
+                Runnable task = pool.findTask(this);
+                if (task == null) {
+                    if (!active) break;
+                    pool.idleWorkers.add(this);
+                    if (!pool.hasQueuedTasks())
+                        LockSupport.park(pool);
+                    pool.idleWorkers.remove(this);
+                    if (Thread.interrupted() && !active) break;
+                    continue;
+                }
+
+                if (!active) {
+                    deque.addFirst(task);
+                    break;
+                }
+
+                pool.queuedTasks.decrementAndGet();
+                busy = true;
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    busy = false;
+                }
+                Thread.interrupted();
+            }
+            handOver();
+            // The worker may have been woken for a task just before it was retired; pass the wakeup on.
+            if (pool.isRunning)
+                pool.wakeIdleWorker();
+            pool.liveThreads.decrementAndGet();
+            CURRENT.remove();
+        }
+
+        private void handOver() {
+            Runnable task;
+            while ((task = deque.pollFirst()) != null) {
+                pool.queuedTasks.decrementAndGet();
+                if (pool.isRunning)
+                    pool.enqueue(task);
+            }
+        }
     }
-}
\ No newline at end of file
+}
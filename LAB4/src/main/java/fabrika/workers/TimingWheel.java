@@ -0,0 +1,174 @@
+package fabrika.workers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel that fires periodic actor ticks on a fixed number of threads, however many actors there are.
+ * One ticker thread owns the wheel: it moves new timeouts into their buckets and hands due ones to a small pool.
+ * A tick must not block; it returns the delay until its next tick instead, which is read anew every time,
+ * so a delay changed by a slider takes effect from the next tick on.
+ */
+public class TimingWheel implements AutoCloseable {
+    public static final int DEFAULT_TICK = 1;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final int DEFAULT_THREADS = 2;
+
+    private static final int MAX_RETRY_SHIFT = 5;
+
+    /** One actor's unit of work. */
+    public interface Periodic {
+        /** Does the work and returns the milliseconds until the next tick, or a negative value to stop. */
+        long tick();
+
+        /** Called once when the wheel closes, never during a tick, so work in progress can be handed back. */
+        default void cancel() { }
+    }
+
+    private final long tickNanos;
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Set<Timeout> scheduled = ConcurrentHashMap.newKeySet();
+    private final int threads;
+    private final ThreadFactory threadFactory;
+    private ThreadPool threadPool;
+    private Thread ticker;
+    private volatile boolean running;
+    private long tick;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(int tickMillis, int wheelSize, int threads, ThreadFactory threadFactory) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++)
+            wheel[i] = new ArrayList<>();
+        this.mask = size - 1;
+        this.threads = threads;
+        this.threadFactory = threadFactory;
+    }
+
+    /** Starts the ticker and the tick threads; actors scheduled before start first fire after it. */
+    public synchronized void start() {
+        if (ticker != null) return;
+        threadPool = new ThreadPool(threads, threadFactory);
+        running = true;
+        ticker = new Thread(this::runTicker, "timing-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /** Backoff for an actor that found nothing to do: 1, 2, 4 ... 32 ms with the number of idle ticks in a row. */
+    public static long retryDelay(int idleTicks) {
+        return 1L << Math.min(idleTicks, MAX_RETRY_SHIFT);
+    }
+
+    public void schedule(Periodic task, long delayMillis) {
+        Timeout timeout = new Timeout(task);
+        timeout.delayTicks = toTicks(delayMillis);
+        scheduled.add(timeout);
+        added.add(timeout);
+    }
+
+    public int getThreadCount() {return threads; }
+
+    /** Stops firing and cancels every scheduled actor, waiting for ticks that are running. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            if (ticker != null) {
+                ticker.interrupt();
+                threadPool.shutdown();
+            }
+        }
+        for (Timeout timeout : scheduled)
+            timeout.cancel();
+        scheduled.clear();
+    }
+
+    private long toTicks(long delayMillis) {
+        return Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos);
+    }
+
+    private void runTicker() {
+        long next = System.nanoTime();
+        while (running) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            // A late ticker catches up tick by tick, so no bucket is skipped.
+            next += tickNanos;
+            transferAdded();
+            fire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            timeout.rounds = timeout.delayTicks / wheel.length;
+            wheel[(int) ((tick + timeout.delayTicks) & mask)].add(timeout);
+        }
+    }
+
+    private void fire(List<Timeout> bucket) {
+        for (int i = 0; i < bucket.size(); ) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                i++;
+                continue;
+            }
+            int last = bucket.size() - 1;
+            bucket.set(i, bucket.get(last));
+            bucket.remove(last);
+            threadPool.submitTask(timeout);
+        }
+    }
+
+    private final class Timeout implements Runnable {
+        private final Periodic task;
+        private long delayTicks;
+        private long rounds;
+
+        private boolean cancelled;
+
+        Timeout(Periodic task) {this.task = task; }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled) return;
+            long delay;
+            try {
+                delay = task.tick();
+            } catch (RuntimeException e) {
+                System.err.println("Timed task failed: " + e.getMessage());
+                delay = retryDelay(MAX_RETRY_SHIFT);
+            }
+            // The same timeout goes back in, so a periodic actor costs no allocation per tick beyond the queue node.
+            if (delay >= 0 && running) {
+                delayTicks = toTicks(delay);
+                added.add(this);
+            } else if (delay < 0) {
+                scheduled.remove(this);
+            }
+        }
+
+        synchronized void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            task.cancel();
+        }
+    }
+}
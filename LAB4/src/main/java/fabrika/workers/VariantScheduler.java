@@ -0,0 +1,124 @@
+package fabrika.workers;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarVariant;
+import fabrika.storage.Storage;
+import fabrika.storage.StorageReservation;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which variant a worker assembles next and reserves its whole bill of materials at once.
+ * Variants are served by weighted fair share: the one with the fewest started cars per unit of weight goes first.
+ * If its parts are missing, variants behind it may go ahead, but only up to maxLead cars per unit of weight,
+ * so a variant with a large bill of materials cannot be starved by the cheaper ones.
+ */
+public class VariantScheduler {
+    public static final int DEFAULT_MAX_LEAD = 16;
+
+    static final int BODY = 0;
+    static final int MOTOR = 1;
+    static final int ACCESSORY = 2;
+
+    private final CarVariant[] variants;
+    private final int[][] billOfMaterials;
+    private final StorageReservation reservation;
+    private final AtomicLongArray started;
+    private final int maxLead;
+    // Bumped whenever a reservation may newly succeed: a part was stored, or a variant started and moved the lead limit.
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition changed = waitLock.newCondition();
+
+    public VariantScheduler(List<CarVariant> variants, Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage,
+                            Storage<Accessory> accessoryStorage, int maxLead) {
+        this.variants = variants.toArray(new CarVariant[0]);
+        this.billOfMaterials = new int[this.variants.length][];
+        for (int i = 0; i < this.variants.length; i++) {
+            CarVariant variant = this.variants[i];
+            billOfMaterials[i] = new int[]{variant.getBodies(), variant.getEngines(), variant.getAccessories()};
+        }
+        this.reservation = new StorageReservation(bodyStorage, motorStorage, accessoryStorage);
+        this.started = new AtomicLongArray(this.variants.length);
+        this.maxLead = maxLead;
+        bodyStorage.setPutListener(this::signal);
+        motorStorage.setPutListener(this::signal);
+        accessoryStorage.setPutListener(this::signal);
+    }
+
+    StorageReservation getReservation() {return reservation; }
+
+    public CarVariant[] getVariants() {return variants.clone(); }
+    public long getStarted(CarVariant variant) {return started.get(variant.getIndex()); }
+
+    /** Waits until the parts of some variant are reserved and returns that variant. */
+    public CarVariant reserve() throws InterruptedException {
+        while (true) {
+            long seen = changes.get();
+            CarVariant variant = tryReserve();
+            if (variant != null) return variant;
+            // Counted as waiting before the last look at changes, so a signaller either sees the waiter or is seen.
+            waiting.incrementAndGet();
+            try {
+                waitLock.lockInterruptibly();
+                try {
+                    while (changes.get() == seen)
+                        changed.await();
+                } finally {
+                    waitLock.unlock();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /** Reserves the parts of the variant due next, or returns null if none can be built now. */
+    public CarVariant tryReserve() {
+        int count = variants.length;
+        double[] progress = new double[count];
+        double least = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            progress[i] = (double) started.get(i) / variants[i].getWeight();
+            least = Math.min(least, progress[i]);
+        }
+
+        // Try the variants from the furthest behind on; each is picked out by a scan, as there are only a few.
+        boolean[] tried = new boolean[count];
+        for (int attempt = 0; attempt < count; attempt++) {
+            int next = -1;
+            for (int i = 0; i < count; i++)
+                if (!tried[i] && (next < 0 || progress[i] < progress[next]))
+                    next = i;
+            if (progress[next] - least > maxLead)
+                return null;
+            tried[next] = true;
+            if (reservation.tryReserve(billOfMaterials[next])) {
+                started.incrementAndGet(next);
+                if (variants.length > 1)
+                    signal();
+                return variants[next];
+            }
+        }
+        return null;
+    }
+
+    private void signal() {
+        changes.incrementAndGet();
+        if (waiting.get() == 0) return;
+        waitLock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+}
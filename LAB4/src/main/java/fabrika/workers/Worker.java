@@ -2,32 +2,69 @@ package fabrika.workers;
 
 import fabrika.CarPart.*;
 import fabrika.car.CarModel;
+import fabrika.car.CarRecycler;
+import fabrika.car.CarVariant;
+import fabrika.journal.FactoryJournal;
+import fabrika.metrics.LeadTimeMetrics;
 import fabrika.storage.Storage;
+import fabrika.storage.StorageReservation;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Worker implements Runnable, Serializable {
     private final Storage<BodyPart> bodyStorage;
     private final Storage<Engine> motorStorage;
     private final Storage<Accessory> accessoryStorage;
     private final Storage<CarModel> carStorage;
+    private final int batchSize;
+    private final int carsToBuild;
+    private transient CarRecycler recycler;
+    private transient FactoryJournal journal;
+    private transient LongAdder builtCars;
+    private transient VariantScheduler scheduler;
+    private transient LeadTimeMetrics leadTimes;
 
     public Worker(Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, Storage<CarModel> carStorage) {
+        this(bodyStorage, motorStorage, accessoryStorage, carStorage, 1, 0);
+    }
+
+    /** A positive carsToBuild makes the worker a finite job; 0 keeps assembling until interrupted. */
+    public Worker(Storage<BodyPart> bodyStorage, Storage<Engine> motorStorage, Storage<Accessory> accessoryStorage, Storage<CarModel> carStorage, int batchSize, int carsToBuild) {
         this.bodyStorage = bodyStorage;
         this.motorStorage = motorStorage;
         this.accessoryStorage = accessoryStorage;
         this.carStorage = carStorage;
+        this.batchSize = batchSize;
+        this.carsToBuild = carsToBuild;
     }
 
+    public void setRecycler(CarRecycler recycler) {this.recycler = recycler; }
+    public void setJournal(FactoryJournal journal) {this.journal = journal; }
+    public void setBuiltCounter(LongAdder builtCars) {this.builtCars = builtCars; }
+    public void setScheduler(VariantScheduler scheduler) {this.scheduler = scheduler; }
+    public void setLeadTimes(LeadTimeMetrics leadTimes) {this.leadTimes = leadTimes; }
+
     @Override
     public void run() {
         try {
-            while (!Thread.currentThread().isInterrupted()) {
+            if (scheduler != null) {
+                runVariants();
+                return;
+            }
+            if (batchSize > 1) {
+                runBatches();
+                return;
+            }
+
+            for (int built = 0; !Thread.currentThread().isInterrupted() && !isDone(built); built++) {
                 BodyPart body = bodyStorage.take();
                 Engine engine = motorStorage.take();
                 Accessory accessory = accessoryStorage.take();
 
-                CarModel car = new CarModel(engine, body, accessory);
+                CarModel car = assemble(engine, body, accessory);
 
                 carStorage.addItem(car);
             }
@@ -35,4 +72,155 @@ public class Worker implements Runnable, Serializable {
             Thread.currentThread().interrupt();
         }
     }
+
+    private CarModel assemble(Engine engine, BodyPart body, Accessory accessory) {
+        return built(recycler != null ? recycler.assemble(engine, body, accessory) : new CarModel(engine, body, accessory),
+                System.nanoTime());
+    }
+
+    private CarModel built(CarModel car, long takenNanos) {
+        if (leadTimes != null) {
+            leadTimes.partTaken(car.getBody(), takenNanos);
+            leadTimes.partTaken(car.getEngine(), takenNanos);
+            leadTimes.partTaken(car.getAccessory(), takenNanos);
+            for (CarParts part : car.getExtraParts())
+                leadTimes.partTaken(part, takenNanos);
+        }
+        car.stampAssembled(System.nanoTime());
+        // Journaled before the car is stored: once a dealer has it, it may already be recycled.
+        if (journal != null)
+            journal.assembled(car);
+        if (builtCars != null)
+            builtCars.increment();
+        return car;
+    }
+
+    private boolean isDone(int built) {
+        return carsToBuild > 0 && built >= carsToBuild;
+    }
+
+    /** Takes the parts of the next car without waiting, or returns null if they are not all in stock. */
+    public Assembly tryStart() {
+        if (scheduler != null) {
+            CarVariant variant = scheduler.tryReserve();
+            return variant == null ? null : takeReserved(variant);
+        }
+        if (bodyStorage.getSize() == 0 || motorStorage.getSize() == 0 || accessoryStorage.getSize() == 0)
+            return null;
+        return new Assembly(CarVariant.STANDARD, bodyStorage.poll(), motorStorage.poll(), accessoryStorage.poll(),
+                new CarParts[0], System.nanoTime());
+    }
+
+    /** Builds the car of a started assembly; storing it is up to the caller. */
+    public CarModel finish(Assembly assembly) {
+        CarVariant variant = assembly.variant;
+        return built(recycler != null
+                ? recycler.assemble(variant, assembly.engine, assembly.body, assembly.accessory, assembly.extraParts)
+                : new CarModel(variant, assembly.engine, assembly.body, assembly.accessory, assembly.extraParts),
+                assembly.takenNanos);
+    }
+
+    private void runBatches() throws InterruptedException {
+        List<BodyPart> bodies = new ArrayList<>(batchSize);
+        List<Engine> engines = new ArrayList<>(batchSize);
+        List<Accessory> accessories = new ArrayList<>(batchSize);
+        List<CarModel> cars = new ArrayList<>(batchSize);
+
+        int built = 0;
+        while (!Thread.currentThread().isInterrupted() && !isDone(built)) {
+            int wanted = carsToBuild > 0 ? Math.min(batchSize, carsToBuild - built) : batchSize;
+            int count = bodyStorage.drainTo(bodies, wanted);
+            while (engines.size() < count)
+                motorStorage.drainTo(engines, count - engines.size());
+            while (accessories.size() < count)
+                accessoryStorage.drainTo(accessories, count - accessories.size());
+
+            for (int i = 0; i < count; i++)
+                cars.add(assemble(engines.get(i), bodies.get(i), accessories.get(i)));
+
+            carStorage.addAll(cars);
+            built += count;
+            bodies.clear();
+            engines.clear();
+            accessories.clear();
+            cars.clear();
+        }
+    }
+
+    /** Takes a whole reserved bill of materials at once, so a worker never waits with half a car. */
+    private void runVariants() throws InterruptedException {
+        for (int built = 0; !Thread.currentThread().isInterrupted() && !isDone(built); built++) {
+            Assembly assembly = takeReserved(scheduler.reserve());
+
+            if (assembly.getAssemblyTime() > 0) {
+                try {
+                    Thread.sleep(assembly.getAssemblyTime());
+                } catch (InterruptedException e) {
+                    // Stopped mid-assembly: the parts go back rather than disappear.
+                    returnParts(assembly);
+                    throw e;
+                }
+            }
+
+            carStorage.addItem(finish(assembly));
+        }
+    }
+
+    private Assembly takeReserved(CarVariant variant) {
+        StorageReservation reservation = scheduler.getReservation();
+        BodyPart body = reservation.take(VariantScheduler.BODY);
+        Engine engine = reservation.take(VariantScheduler.MOTOR);
+        Accessory accessory = reservation.take(VariantScheduler.ACCESSORY);
+        CarParts[] extraParts = new CarParts[variant.getBodies() + variant.getEngines() + variant.getAccessories() - 3];
+        int extra = 0;
+        for (int i = 1; i < variant.getBodies(); i++)
+            extraParts[extra++] = reservation.<BodyPart>take(VariantScheduler.BODY);
+        for (int i = 1; i < variant.getEngines(); i++)
+            extraParts[extra++] = reservation.<Engine>take(VariantScheduler.MOTOR);
+        for (int i = 1; i < variant.getAccessories(); i++)
+            extraParts[extra++] = reservation.<Accessory>take(VariantScheduler.ACCESSORY);
+        return new Assembly(variant, body, engine, accessory, extraParts, System.nanoTime());
+    }
+
+    /** Parts that no longer fit are dropped, and withdrawn from the journal so recovery does not bring them back. */
+    private void returnParts(Assembly assembly) {
+        int dropped = returnPart(bodyStorage, assembly.body) + returnPart(motorStorage, assembly.engine)
+                + returnPart(accessoryStorage, assembly.accessory);
+        for (CarParts part : assembly.extraParts) {
+            if (part instanceof BodyPart) dropped += returnPart(bodyStorage, (BodyPart) part);
+            else if (part instanceof Engine) dropped += returnPart(motorStorage, (Engine) part);
+            else dropped += returnPart(accessoryStorage, (Accessory) part);
+        }
+        if (dropped > 0)
+            System.err.println("Error: " + dropped + " parts of a stopped assembly did not fit back into the storages");
+    }
+
+    private <T extends CarParts> int returnPart(Storage<T> storage, T part) {
+        if (storage.offer(part)) return 0;
+        if (journal != null)
+            journal.withdrawn(part);
+        return 1;
+    }
+
+    /** The parts of one car, held by a worker for as long as the assembly takes. */
+    public static class Assembly {
+        private final CarVariant variant;
+        private final BodyPart body;
+        private final Engine engine;
+        private final Accessory accessory;
+        private final CarParts[] extraParts;
+        private final long takenNanos;
+
+        Assembly(CarVariant variant, BodyPart body, Engine engine, Accessory accessory, CarParts[] extraParts, long takenNanos) {
+            this.variant = variant;
+            this.body = body;
+            this.engine = engine;
+            this.accessory = accessory;
+            this.extraParts = extraParts;
+            this.takenNanos = takenNanos;
+        }
+
+        public CarVariant getVariant() {return variant; }
+        public int getAssemblyTime() {return variant.getAssemblyTime(); }
+    }
 }
@@ -0,0 +1,185 @@
+package fabrika.checkpoint;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FactoryCheckpointTest {
+    @TempDir
+    Path dir;
+
+    private final List<CarFactory> factories = new ArrayList<>();
+
+    @AfterEach
+    void stopFactories() {
+        for (CarFactory factory : factories)
+            factory.stop();
+    }
+
+    @Test
+    void deltasRestoreTheLatestContents() throws Exception {
+        CarFactory saved = newFactory();
+        Storage<BodyPart> bodies = saved.getBodyStorage();
+        for (int id = 1; id <= 5; id++)
+            bodies.addItem(new BodyPart(id));
+        saved.getCarStorage().addItem(car(100, 11, 12, 13));
+        saved.getCheckpoint().save();
+
+        bodies.take();
+        bodies.take();
+        for (int id = 6; id <= 8; id++)
+            bodies.addItem(new BodyPart(id));
+        saved.getCheckpoint().saveIncremental();
+
+        saved.getCarStorage().take();
+        saved.getCarStorage().addItem(car(101, 21, 22, 23));
+        saved.getMotorStorage().addItem(new Engine(30));
+        saved.getCheckpoint().saveIncremental();
+        assertTrue(Files.exists(dir.resolve("factory.ckpt.delta")));
+
+        CarFactory restored = newFactory();
+        restored.getCheckpoint().restore();
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8), ids(restored.getBodyStorage()));
+        assertEquals(Arrays.asList(30), ids(restored.getMotorStorage()));
+        CarModel car = restored.getCarStorage().take();
+        assertEquals(101, car.getId());
+        assertEquals(21, car.getEngine().getId());
+        assertEquals(22, car.getBody().getId());
+        assertEquals(23, car.getAccessory().getId());
+    }
+
+    @Test
+    void tornDeltaIsIgnored() throws Exception {
+        CarFactory saved = newFactory();
+        saved.getBodyStorage().addItem(new BodyPart(1));
+        saved.getCheckpoint().save();
+        saved.getBodyStorage().addItem(new BodyPart(2));
+        saved.getCheckpoint().saveIncremental();
+        Path delta = dir.resolve("factory.ckpt.delta");
+        long intact = Files.size(delta);
+        saved.getBodyStorage().addItem(new BodyPart(3));
+        saved.getCheckpoint().saveIncremental();
+        try (FileChannel channel = FileChannel.open(delta, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(delta) - 3);
+        }
+        assertTrue(Files.size(delta) > intact);
+
+        CarFactory restored = newFactory();
+        restored.getCheckpoint().restore();
+        assertEquals(Arrays.asList(1, 2), ids(restored.getBodyStorage()));
+    }
+
+    @Test
+    void fullSaveDropsTheDeltaLog() throws Exception {
+        CarFactory saved = newFactory();
+        saved.getCheckpoint().save();
+        saved.getBodyStorage().addItem(new BodyPart(1));
+        saved.getCheckpoint().saveIncremental();
+        assertTrue(Files.exists(dir.resolve("factory.ckpt.delta")));
+        saved.getCheckpoint().save();
+        assertFalse(Files.exists(dir.resolve("factory.ckpt.delta")));
+
+        CarFactory restored = newFactory();
+        restored.getCheckpoint().restore();
+        assertEquals(Arrays.asList(1), ids(restored.getBodyStorage()));
+    }
+
+    @Test
+    void variantCarsKeepTheirVariantAndExtraParts() throws Exception {
+        CarFactory saved = newFactory("CarVariants", "truck", "Variant.truck.Bodies", "2", "Variant.truck.Engines", "2");
+        CarVariant truck = saved.getVariants().get(0);
+        saved.getCarStorage().addItem(car(100, 11, 12, 13));
+        saved.getCheckpoint().save();
+        saved.getCarStorage().addItem(new CarModel(101, truck, new Engine(21), new BodyPart(22), new Accessory(23),
+                new CarParts[]{new BodyPart(24), new Engine(25)}));
+        saved.getCheckpoint().saveIncremental();
+
+        CarFactory restored = newFactory("CarVariants", "truck", "Variant.truck.Bodies", "2", "Variant.truck.Engines", "2");
+        restored.getCheckpoint().restore();
+        assertSame(CarVariant.STANDARD, restored.getCarStorage().take().getVariant());
+        CarModel car = restored.getCarStorage().take();
+        assertSame(restored.getVariants().get(0), car.getVariant());
+        CarParts[] extras = car.getExtraParts();
+        assertEquals(2, extras.length);
+        assertTrue(extras[0] instanceof BodyPart);
+        assertEquals(24, extras[0].getId());
+        assertTrue(extras[1] instanceof Engine);
+        assertEquals(25, extras[1].getId());
+    }
+
+    @Test
+    void partsCountedButNotStoredAreKeptWithTheirCount() throws Exception {
+        CarFactory saved = newFactory();
+        Supplier<BodyPart> supplier = saved.getBodySupplier();
+        BodyPart stored = supplier.reserve();
+        assertTrue(supplier.tryDeliver(stored));
+        BodyPart pending = supplier.reserve();
+        saved.getCheckpoint().save();
+
+        CarFactory restored = newFactory();
+        restored.getCheckpoint().restore();
+        assertEquals(2, restored.getBodySupplier().getSuppliedCount());
+        assertEquals(Arrays.asList(stored.getId(), pending.getId()), ids(restored.getBodyStorage()));
+    }
+
+    @Test
+    void restoreIsRefusedOnceStarted() throws Exception {
+        CarFactory factory = newFactory();
+        factory.getCheckpoint().save();
+        factory.start();
+        assertThrows(FactoryException.class, () -> factory.getCheckpoint().restore());
+    }
+
+    private CarFactory newFactory(String... settings) {
+        Properties properties = new Properties();
+        properties.setProperty("StorageBodySize", "10");
+        properties.setProperty("StorageMotorSize", "10");
+        properties.setProperty("StorageAccessorySize", "10");
+        properties.setProperty("StorageAutoSize", "10");
+        properties.setProperty("SupplierBodyDelay", "100000");
+        properties.setProperty("SupplierMotorDelay", "100000");
+        properties.setProperty("SupplierAccessoryDelay", "100000");
+        properties.setProperty("DealerDelay", "100000");
+        properties.setProperty("Workers", "1");
+        properties.setProperty("Dealers", "1");
+        properties.setProperty("StorageType", "ring");
+        properties.setProperty("CheckpointFile", dir.resolve("factory.ckpt").toString());
+        for (int i = 0; i < settings.length; i += 2)
+            properties.setProperty(settings[i], settings[i + 1]);
+        CarFactory factory = new CarFactory(new FactoryConfig(properties), false);
+        factories.add(factory);
+        return factory;
+    }
+
+    private static CarModel car(int id, int engine, int body, int accessory) {
+        return new CarModel(id, new Engine(engine), new BodyPart(body), new Accessory(accessory));
+    }
+
+    private static List<Integer> ids(Storage<? extends CarParts> storage) {
+        List<Integer> ids = new ArrayList<>();
+        storage.getItems().forEach(part -> ids.add(part.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,50 @@
+package fabrika.dealer;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.storage.Storage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+class OrderDispatcherTest {
+    private final Storage<CarModel> carStorage = new Storage<>(10);
+    private final OrderBook orderBook = new OrderBook(OrderBook.DEFAULT_PRIORITIES, 60000);
+    private final Thread dispatcher = new Thread(new OrderDispatcher(carStorage, orderBook));
+
+    @AfterEach
+    void stopDispatcher() throws InterruptedException {
+        dispatcher.interrupt();
+        dispatcher.join();
+    }
+
+    @Test
+    void carGoesToTheMostUrgentOrderPlacedWhileWaiting() throws Exception {
+        Order low = orderBook.place(1, OrderBook.DEFAULT_PRIORITIES - 1);
+        dispatcher.start();
+        // Let the dispatcher wait for a car while only the low priority order is pending.
+        Thread.sleep(100);
+        Order high = orderBook.place(2, 0);
+        carStorage.addItem(new CarModel(1, new Engine(2), new BodyPart(3), new Accessory(4)));
+
+        assertEquals(1, high.awaitCar().getId());
+        assertTrue(low.isOpen());
+    }
+
+    @Test
+    void carOfACancelledOrderGoesBackToTheStorage() throws Exception {
+        Order order = orderBook.place(1, 0);
+        dispatcher.start();
+        Thread.sleep(100);
+        assertTrue(orderBook.cancel(order));
+        carStorage.addItem(new CarModel(1, new Engine(2), new BodyPart(3), new Accessory(4)));
+
+        Thread.sleep(100);
+        assertEquals(1, carStorage.getSize());
+    }
+}
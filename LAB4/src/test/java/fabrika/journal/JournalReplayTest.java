@@ -0,0 +1,175 @@
+package fabrika.journal;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.car.CarVariant;
+import fabrika.config.FactoryConfig;
+import fabrika.storage.RingBufferStorage;
+import fabrika.storage.Storage;
+import fabrika.supplier.Supplier;
+import fabrika.workers.ThreadMode;
+import fabrika.workers.TimingWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalReplayTest {
+    @TempDir
+    Path dir;
+
+    private final List<CarFactory> factories = new ArrayList<>();
+
+    @AfterEach
+    void stopFactories() {
+        for (CarFactory factory : factories)
+            factory.stop();
+    }
+
+    @Test
+    void replayRebuildsStoragesAndCounters() throws Exception {
+        FactoryJournal journal = openJournal();
+        journal.supplied(new BodyPart(1), 1);
+        journal.supplied(new BodyPart(2), 2);
+        journal.supplied(new Engine(3), 1);
+        journal.supplied(new Accessory(4), 1);
+        journal.supplied(new Engine(5), 2);
+        journal.assembled(new CarModel(7, new Engine(3), new BodyPart(1), new Accessory(4)));
+        journal.supplied(new BodyPart(6), 3);
+        journal.withdrawn(new BodyPart(6));
+        journal.close();
+
+        CarFactory factory = newFactory();
+        new JournalReplay(factory).replay(dir, 0);
+        assertEquals(Arrays.asList(2), ids(factory.getBodyStorage()));
+        assertEquals(Arrays.asList(5), ids(factory.getMotorStorage()));
+        assertEquals(0, factory.getAccessoryStorage().getSize());
+        assertEquals(7, factory.getCarStorage().take().getId());
+        assertEquals(3, factory.getBodySupplier().getSuppliedCount());
+        assertEquals(2, factory.getMotorSupplier().getSuppliedCount());
+        assertTrue(CarParts.getLastId() >= 6);
+        assertTrue(CarModel.getNextId() >= 8);
+    }
+
+    @Test
+    void soldCarIsNotRestored() throws Exception {
+        FactoryJournal journal = openJournal();
+        journal.supplied(new BodyPart(1), 1);
+        journal.supplied(new Engine(2), 1);
+        journal.supplied(new Accessory(3), 1);
+        CarModel car = new CarModel(4, new Engine(2), new BodyPart(1), new Accessory(3));
+        journal.assembled(car);
+        journal.sold(1, car, 1);
+        journal.close();
+
+        CarFactory factory = newFactory();
+        new JournalReplay(factory).replay(dir, 0);
+        assertEquals(0, factory.getCarStorage().getSize());
+        assertEquals(0, factory.getBodyStorage().getSize());
+        assertEquals(1, factory.getDealers().get(0).getSoldCarsCount());
+    }
+
+    @Test
+    @Timeout(30)
+    void partOfAnInterruptedSupplierIsNotRestored() throws Exception {
+        FactoryJournal journal = openJournal();
+        Storage<BodyPart> storage = new RingBufferStorage<>(1);
+        Supplier<BodyPart> supplier = new Supplier<>(storage, BodyPart::new, 0);
+        supplier.setJournal(journal);
+        Thread thread = new Thread(supplier);
+        thread.start();
+        // The first part fills the storage; the next one waits in addItem until the interrupt.
+        while (supplier.getSuppliedCount() < 2)
+            Thread.sleep(1);
+        thread.interrupt();
+        thread.join();
+        journal.close();
+
+        CarFactory factory = newFactory();
+        new JournalReplay(factory).replay(dir, 0);
+        assertEquals(ids(storage), ids(factory.getBodyStorage()));
+    }
+
+    @Test
+    @Timeout(30)
+    void pendingPartOfAClosedWheelIsNotRestored() throws Exception {
+        FactoryJournal journal = openJournal();
+        Storage<BodyPart> storage = new RingBufferStorage<>(1);
+        Supplier<BodyPart> supplier = new Supplier<>(storage, BodyPart::new, 0);
+        supplier.setJournal(journal);
+        TimingWheel wheel = new TimingWheel(1, 8, 1, ThreadMode.PLATFORM.threadFactory());
+        wheel.schedule(supplier.ticker(), 0);
+        wheel.start();
+        while (supplier.getSuppliedCount() < 2)
+            Thread.sleep(1);
+        wheel.close();
+        journal.close();
+
+        CarFactory factory = newFactory();
+        new JournalReplay(factory).replay(dir, 0);
+        assertEquals(ids(storage), ids(factory.getBodyStorage()));
+    }
+
+    @Test
+    void variantCarIsReplayedWithItsExtraParts() throws Exception {
+        CarVariant truck = new CarVariant(0, "truck", 2, 1, 1, 0, 1);
+        FactoryJournal journal = openJournal();
+        journal.supplied(new BodyPart(1), 1);
+        journal.supplied(new BodyPart(2), 2);
+        journal.supplied(new Engine(3), 1);
+        journal.supplied(new Accessory(4), 1);
+        journal.assembled(new CarModel(5, truck, new Engine(3), new BodyPart(1), new Accessory(4),
+                new CarParts[]{new BodyPart(2)}));
+        journal.close();
+
+        CarFactory factory = newFactory();
+        new JournalReplay(factory).replay(dir, 0);
+        assertEquals(0, factory.getBodyStorage().getSize());
+        CarModel car = factory.getCarStorage().take();
+        assertEquals(5, car.getId());
+        assertEquals(2, car.getVariant().getBodies());
+        assertEquals(1, car.getExtraParts().length);
+        assertEquals(2, car.getExtraParts()[0].getId());
+    }
+
+    private FactoryJournal openJournal() {
+        FactoryJournal journal = new FactoryJournal(dir.toString(), 1);
+        journal.open();
+        return journal;
+    }
+
+    private CarFactory newFactory() {
+        Properties properties = new Properties();
+        properties.setProperty("StorageBodySize", "10");
+        properties.setProperty("StorageMotorSize", "10");
+        properties.setProperty("StorageAccessorySize", "10");
+        properties.setProperty("StorageAutoSize", "10");
+        properties.setProperty("SupplierBodyDelay", "100000");
+        properties.setProperty("SupplierMotorDelay", "100000");
+        properties.setProperty("SupplierAccessoryDelay", "100000");
+        properties.setProperty("DealerDelay", "100000");
+        properties.setProperty("Workers", "1");
+        properties.setProperty("Dealers", "1");
+        CarFactory factory = new CarFactory(new FactoryConfig(properties), false);
+        factories.add(factory);
+        return factory;
+    }
+
+    private static List<Integer> ids(Storage<? extends CarParts> storage) {
+        List<Integer> ids = new ArrayList<>();
+        storage.getItems().forEach(part -> ids.add(part.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,203 @@
+package fabrika.remote;
+
+import fabrika.CarFactory;
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.CarParts;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarModel;
+import fabrika.config.FactoryConfig;
+import fabrika.exeptions.FactoryException;
+import fabrika.storage.Storage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(20)
+class StorageServerTest {
+    @TempDir
+    Path dir;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<CarFactory> factories = new ArrayList<>();
+
+    @AfterEach
+    void stopAll() throws Exception {
+        for (AutoCloseable resource : resources)
+            resource.close();
+        for (CarFactory factory : factories)
+            factory.stop();
+    }
+
+    @Test
+    void partsFromSeveralNodesGetDistinctIds() throws Exception {
+        CarFactory factory = newFactory();
+        StorageServer server = newServer(factory);
+        RemoteStorage<BodyPart> first = open(RemoteStorage.body("localhost", server.getPort()));
+        RemoteStorage<BodyPart> second = open(RemoteStorage.body("localhost", server.getPort()));
+        first.addItem(new BodyPart(1));
+        second.addItem(new BodyPart(1));
+
+        awaitSize(factory.getBodyStorage(), 2);
+        assertEquals(2, new HashSet<>(ids(factory.getBodyStorage())).size());
+    }
+
+    @Test
+    void remotePartsAndSalesAreJournaled() throws Exception {
+        // No checkpoint at stop, so the recovered storages come from the journal alone.
+        CarFactory factory = newFactory("JournalEnabled", "true", "CheckpointInterval", "0");
+        factory.start();
+        CarModel car = new CarModel(500, new Engine(501), new BodyPart(502), new Accessory(503));
+        factory.getJournal().assembled(car);
+        factory.getCarStorage().addItem(car);
+        StorageServer server = newServer(factory);
+        // Accessories, as idle workers wait for a body first and leave them alone.
+        RemoteStorage<Accessory> accessories = open(RemoteStorage.accessory("localhost", server.getPort()));
+        accessories.addItem(new Accessory(1));
+        accessories.addItem(new Accessory(2));
+        RemoteStorage<CarModel> cars = open(RemoteStorage.cars("localhost", server.getPort(), 1));
+        assertEquals(500, cars.take().getId());
+        cars.sold(1, 500, 1);
+        // Closing sends the acknowledgement; the server drops the connection once it has read it.
+        cars.close();
+        awaitConnections(server, 1);
+
+        awaitSize(factory.getAccessoryStorage(), 2);
+        List<Integer> stored = ids(factory.getAccessoryStorage());
+        server.close();
+        factory.stop();
+        factories.remove(factory);
+
+        CarFactory recovered = newFactory("JournalEnabled", "true", "CheckpointInterval", "0");
+        recovered.start();
+        assertEquals(stored, ids(recovered.getAccessoryStorage()));
+        assertEquals(0, recovered.getCarStorage().getSize());
+    }
+
+    @Test
+    void remoteStorageReportsTheFillOfTheServedStorage() throws Exception {
+        CarFactory factory = newFactory();
+        factory.getAccessoryStorage().addItem(new Accessory(1));
+        StorageServer server = newServer(factory);
+        RemoteStorage<Accessory> accessories = open(RemoteStorage.accessory("localhost", server.getPort()));
+        assertEquals(1, accessories.getSize());
+
+        accessories.addItem(new Accessory(2));
+        awaitSize(accessories, 2);
+        assertEquals(2, factory.getAccessoryStorage().getSize());
+    }
+
+    @Test
+    void unsoldCarsGoBackWhenTheDealerDisconnects() throws Exception {
+        CarFactory factory = newFactory();
+        factory.getCarStorage().addItem(new CarModel(500, new Engine(501), new BodyPart(502), new Accessory(503)));
+        StorageServer server = newServer(factory);
+        RemoteStorage<CarModel> cars = open(RemoteStorage.cars("localhost", server.getPort(), 1));
+        assertEquals(500, cars.take().getId());
+        assertEquals(0, factory.getCarStorage().getSize());
+
+        cars.close();
+        awaitSize(factory.getCarStorage(), 1);
+        assertEquals(500, factory.getCarStorage().take().getId());
+    }
+
+    @Test
+    void dealerNodeStopsWhenTheStorageNodeGoesAway() throws Exception {
+        StorageServer server = newServer(newFactory());
+        Properties properties = properties("Dealers", "2");
+        Thread node = new Thread(() -> {
+            try {
+                RemoteNodeMain.runDealers(new FactoryConfig(properties), "localhost", server.getPort(), 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        node.start();
+        awaitConnections(server, 1);
+
+        server.close();
+        node.join(10000);
+        assertFalse(node.isAlive());
+    }
+
+    @Test
+    void lostConnectionFailsAWaitingTake() throws Exception {
+        StorageServer server = newServer(newFactory());
+        RemoteStorage<CarModel> cars = open(RemoteStorage.cars("localhost", server.getPort(), 1));
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            server.close();
+        });
+        closer.start();
+
+        assertThrows(FactoryException.class, cars::take);
+        assertThrows(FactoryException.class, () -> cars.addItem(new CarModel(1, new Engine(2), new BodyPart(3), new Accessory(4))));
+        closer.join();
+    }
+
+    private CarFactory newFactory(String... settings) {
+        CarFactory factory = new CarFactory(new FactoryConfig(properties(settings)), false);
+        factories.add(factory);
+        return factory;
+    }
+
+    private Properties properties(String... settings) {
+        Properties properties = new Properties();
+        properties.setProperty("StorageBodySize", "10");
+        properties.setProperty("StorageMotorSize", "10");
+        properties.setProperty("StorageAccessorySize", "10");
+        properties.setProperty("StorageAutoSize", "10");
+        properties.setProperty("SupplierBodyCount", "0");
+        properties.setProperty("SupplierMotorCount", "0");
+        properties.setProperty("SupplierAccessoryCount", "0");
+        properties.setProperty("SupplierBodyDelay", "100000");
+        properties.setProperty("SupplierMotorDelay", "100000");
+        properties.setProperty("SupplierAccessoryDelay", "100000");
+        properties.setProperty("DealerDelay", "100000");
+        properties.setProperty("Workers", "1");
+        properties.setProperty("Dealers", "0");
+        properties.setProperty("JournalDirectory", dir.resolve("journal").toString());
+        properties.setProperty("CheckpointFile", dir.resolve("factory.ckpt").toString());
+        for (int i = 0; i < settings.length; i += 2)
+            properties.setProperty(settings[i], settings[i + 1]);
+        return properties;
+    }
+
+    private StorageServer newServer(CarFactory factory) {
+        return open(new StorageServer(factory, 0, StorageServer.DEFAULT_PUT_WINDOW));
+    }
+
+    private <T extends AutoCloseable> T open(T resource) {
+        resources.add(resource);
+        return resource;
+    }
+
+    private static void awaitSize(Storage<?> storage, int size) throws InterruptedException {
+        while (storage.getSize() < size)
+            Thread.sleep(10);
+    }
+
+    private static void awaitConnections(StorageServer server, int count) throws InterruptedException {
+        while (server.getConnectionCount() != count)
+            Thread.sleep(10);
+    }
+
+    private static List<Integer> ids(Storage<? extends CarParts> storage) {
+        List<Integer> ids = new ArrayList<>();
+        storage.getItems().forEach(part -> ids.add(part.getId()));
+        return ids;
+    }
+}
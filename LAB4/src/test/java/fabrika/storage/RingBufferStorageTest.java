@@ -0,0 +1,157 @@
+package fabrika.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferStorageTest {
+    private static final int PRODUCERS = 3;
+    private static final int CONSUMERS = 3;
+    private static final int ITEMS_PER_PRODUCER = 20_000;
+
+    @Test
+    void offerRespectsCapacity() {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(5);
+        for (int i = 0; i < 5; i++)
+            assertTrue(storage.offer(i));
+        assertFalse(storage.offer(5));
+        assertEquals(5, storage.getSize());
+
+        assertEquals(0, storage.poll());
+        assertTrue(storage.offer(5));
+        assertFalse(storage.offer(6));
+    }
+
+    @Test
+    void keepsFifoOrder() throws InterruptedException {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(4);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 4; i++)
+                storage.addItem(round * 4 + i);
+            for (int i = 0; i < 4; i++)
+                assertEquals(round * 4 + i, storage.take());
+        }
+        assertNull(storage.poll());
+    }
+
+    @Test
+    void growKeepsItemsAndOrder() throws InterruptedException {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(4);
+        for (int i = 0; i < 4; i++)
+            storage.addItem(i);
+        storage.setCapacity(100);
+        for (int i = 4; i < 100; i++)
+            storage.addItem(i);
+        assertFalse(storage.offer(100));
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, storage.take());
+    }
+
+    @Test
+    @Timeout(60)
+    void noLossOrDuplicationUnderContention() throws Exception {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(16);
+        runProducersAndConsumers(storage, () -> { });
+    }
+
+    @Test
+    @Timeout(60)
+    void noLossOrDuplicationWhileGrowing() throws Exception {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(2);
+        runProducersAndConsumers(storage, () -> {
+            for (int capacity = 4; capacity <= 4096; capacity *= 2) {
+                storage.setCapacity(capacity);
+                Thread.yield();
+            }
+        });
+    }
+
+    @Test
+    @Timeout(60)
+    void singleProducerOrderSurvivesGrowth() throws Exception {
+        RingBufferStorage<Integer> storage = new RingBufferStorage<>(2);
+        int count = 50_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++)
+                    storage.addItem(i);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    int item = storage.take();
+                    if (item != i) throw new AssertionError("Expected " + i + " but took " + item);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        consumer.start();
+        for (int capacity = 4; capacity <= 8192; capacity *= 2) {
+            storage.setCapacity(capacity);
+            Thread.sleep(1);
+        }
+        producer.join();
+        consumer.join();
+        assertNull(failure.get());
+        assertEquals(0, storage.getSize());
+    }
+
+    /** Every producer adds distinct ids; checks that each id is taken exactly once and the size never exceeds capacity. */
+    private static void runProducersAndConsumers(RingBufferStorage<Integer> storage, Runnable meanwhile) throws Exception {
+        int total = PRODUCERS * ITEMS_PER_PRODUCER;
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicInteger remaining = new AtomicInteger(total);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            int first = p * ITEMS_PER_PRODUCER;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < ITEMS_PER_PRODUCER; i++)
+                        storage.addItem(first + i);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (remaining.getAndDecrement() > 0) {
+                        seen.incrementAndGet(storage.take());
+                        if (storage.getSize() > storage.getCapacity())
+                            throw new AssertionError("Size " + storage.getSize() + " exceeds capacity " + storage.getCapacity());
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        meanwhile.run();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get());
+        for (int i = 0; i < total; i++)
+            assertEquals(1, seen.get(i), "item " + i);
+        assertEquals(0, storage.getSize());
+        assertNull(storage.poll());
+    }
+}
@@ -0,0 +1,113 @@
+package fabrika.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageTest {
+    private static final int PRODUCERS = 2;
+    private static final int CONSUMERS = 2;
+    private static final int ITEMS_PER_PRODUCER = 5_000;
+
+    @Test
+    void keepsFifoOrderAndCapacity() throws InterruptedException {
+        Storage<Integer> storage = new Storage<>(3);
+        storage.addAll(Arrays.asList(0, 1, 2));
+        assertFalse(storage.offer(3));
+        assertEquals(0, storage.take());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, storage.drainTo(drained, 5));
+        assertEquals(Arrays.asList(1, 2), drained);
+        assertNull(storage.poll());
+    }
+
+    @Test
+    @Timeout(60)
+    void spinningWaitersNeverBlock() throws Exception {
+        for (WaitStrategy strategy : new WaitStrategy[]{WaitStrategy.SPIN_YIELD, WaitStrategy.PARK}) {
+            Storage<Integer> storage = new Storage<>(4);
+            storage.setWaitStrategy(strategy);
+            runProducersAndConsumers(storage);
+            assertEquals(0, storage.getWaitStats().getBlocks(), strategy.getConfigName());
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    void batchesUnderContention() throws Exception {
+        Storage<Integer> storage = new Storage<>(4);
+        storage.setWaitStrategy(WaitStrategy.SPIN_YIELD);
+        int total = PRODUCERS * ITEMS_PER_PRODUCER;
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < total; i += 10) {
+                    List<Integer> batch = new ArrayList<>();
+                    for (int j = i; j < i + 10; j++)
+                        batch.add(j);
+                    storage.addAll(batch);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        List<Integer> drained = new ArrayList<>();
+        for (int taken = 0; taken < total; ) {
+            drained.clear();
+            taken += storage.drainTo(drained, 3);
+            for (int item : drained)
+                seen.incrementAndGet(item);
+        }
+        producer.join();
+        assertNull(failure.get());
+        for (int i = 0; i < total; i++)
+            assertEquals(1, seen.get(i), "item " + i);
+        assertEquals(0, storage.getWaitStats().getBlocks());
+    }
+
+    private static void runProducersAndConsumers(Storage<Integer> storage) throws Exception {
+        int total = PRODUCERS * ITEMS_PER_PRODUCER;
+        AtomicIntegerArray seen = new AtomicIntegerArray(total);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int first = p * ITEMS_PER_PRODUCER;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < ITEMS_PER_PRODUCER; i++)
+                        storage.addItem(first + i);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < total / CONSUMERS; i++)
+                        seen.incrementAndGet(storage.take());
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNull(failure.get());
+        for (int i = 0; i < total; i++)
+            assertEquals(1, seen.get(i), "item " + i);
+        assertEquals(0, storage.getSize());
+    }
+}
@@ -0,0 +1,55 @@
+package fabrika.workers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(30)
+class ThreadPoolTest {
+    private final ThreadPool pool = new ThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void resizingUnderLoadLosesNoTask() throws Exception {
+        int tasks = 20000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicInteger ran = new AtomicInteger();
+        Thread resizer = new Thread(() -> {
+            for (int round = 0; done.getCount() > 0; round++) {
+                pool.setWorkerCount(1 + round % 4);
+                Thread.yield();
+            }
+        });
+        resizer.start();
+
+        for (int i = 0; i < tasks; i++) {
+            assertTrue(pool.submitTask(() -> {
+                ran.incrementAndGet();
+                // Tasks submitted from a worker go to its own deque, which a retiring worker has to hand over.
+                if (ran.get() % 10 == 0)
+                    pool.submitTask(() -> { });
+                done.countDown();
+            }));
+        }
+
+        assertTrue(done.await(20, TimeUnit.SECONDS), done.getCount() + " tasks were lost");
+        resizer.join();
+        assertEquals(tasks, ran.get());
+    }
+
+    @Test
+    void taskIsRefusedOnceShutDown() {
+        pool.shutdown();
+        assertFalse(pool.submitTask(() -> { }));
+    }
+}
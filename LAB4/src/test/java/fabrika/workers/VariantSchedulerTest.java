@@ -0,0 +1,65 @@
+package fabrika.workers;
+
+import fabrika.CarPart.Accessory;
+import fabrika.CarPart.BodyPart;
+import fabrika.CarPart.Engine;
+import fabrika.car.CarVariant;
+import fabrika.storage.Storage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Timeout(10)
+class VariantSchedulerTest {
+    private final Storage<BodyPart> bodies = new Storage<>(10);
+    private final Storage<Engine> engines = new Storage<>(10);
+    private final Storage<Accessory> accessories = new Storage<>(10);
+    private final CarVariant truck = new CarVariant(0, "truck", 2, 1, 1, 0, 1);
+    private final VariantScheduler scheduler = new VariantScheduler(Collections.singletonList(truck),
+            bodies, engines, accessories, VariantScheduler.DEFAULT_MAX_LEAD);
+
+    @Test
+    void waitingReservationIsWokenByTheLastMissingPart() throws Exception {
+        bodies.addItem(new BodyPart(1));
+        engines.addItem(new Engine(2));
+        accessories.addItem(new Accessory(3));
+        CompletableFuture<CarVariant> reserved = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                reserved.complete(scheduler.reserve());
+            } catch (InterruptedException e) {
+                reserved.completeExceptionally(e);
+            }
+        });
+        worker.start();
+
+        Thread.sleep(100);
+        assertFalse(reserved.isDone());
+        bodies.addItem(new BodyPart(4));
+        assertSame(truck, reserved.get());
+        assertEquals(1, scheduler.getStarted(truck));
+    }
+
+    @Test
+    void waitingReservationStopsOnInterrupt() throws Exception {
+        CompletableFuture<CarVariant> reserved = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                reserved.complete(scheduler.reserve());
+            } catch (InterruptedException e) {
+                reserved.completeExceptionally(e);
+            }
+        });
+        worker.start();
+
+        Thread.sleep(100);
+        worker.interrupt();
+        ExecutionException failure = assertThrows(ExecutionException.class, reserved::get);
+        assertTrue(failure.getCause() instanceof InterruptedException);
+    }
+}